@@ -0,0 +1,127 @@
+package com.microsoft.cordova.benchmarks;
+
+import com.microsoft.cordova.CodePushStorage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CodePushStorage decorator that counts the reads and the commits made through it.
+ */
+public class CountingStorage implements CodePushStorage {
+    private final CodePushStorage storage;
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    public CountingStorage(CodePushStorage storage) {
+        this.storage = storage;
+    }
+
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * The number of commits, changes committed together count as one write.
+     */
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    @Override
+    public String getString(String group, String key, String defaultValue) {
+        readCount.incrementAndGet();
+        return storage.getString(group, key, defaultValue);
+    }
+
+    @Override
+    public int getInt(String group, String key, int defaultValue) {
+        readCount.incrementAndGet();
+        return storage.getInt(group, key, defaultValue);
+    }
+
+    @Override
+    public boolean getBoolean(String group, String key, boolean defaultValue) {
+        readCount.incrementAndGet();
+        return storage.getBoolean(group, key, defaultValue);
+    }
+
+    @Override
+    public Set<String> getStringSet(String group, String key, Set<String> defaultValue) {
+        readCount.incrementAndGet();
+        return storage.getStringSet(group, key, defaultValue);
+    }
+
+    @Override
+    public Map<String, ?> getAll(String group) {
+        readCount.incrementAndGet();
+        return storage.getAll(group);
+    }
+
+    @Override
+    public Editor edit(String group) {
+        return new CountingEditor(storage.edit(group));
+    }
+
+    @Override
+    public boolean commit(Editor... editors) {
+        writeCount.incrementAndGet();
+        Editor[] storageEditors = new Editor[editors.length];
+        for (int i = 0; i < editors.length; i++) {
+            storageEditors[i] = ((CountingEditor) editors[i]).editor;
+        }
+
+        return storage.commit(storageEditors);
+    }
+
+    private class CountingEditor implements Editor {
+        private final Editor editor;
+
+        CountingEditor(Editor editor) {
+            this.editor = editor;
+        }
+
+        @Override
+        public Editor putString(String key, String value) {
+            editor.putString(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            editor.putInt(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            editor.putBoolean(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> value) {
+            editor.putStringSet(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            editor.remove(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            editor.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            writeCount.incrementAndGet();
+            return editor.commit();
+        }
+    }
+}
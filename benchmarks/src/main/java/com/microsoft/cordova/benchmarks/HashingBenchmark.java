@@ -0,0 +1,122 @@
+package com.microsoft.cordova.benchmarks;
+
+import com.microsoft.cordova.UpdateHashCache;
+import com.microsoft.cordova.UpdateHashKernel;
+import com.microsoft.cordova.UpdateHashUtils;
+import com.microsoft.cordova.UpdateManifestDigest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing of a whole www tree, as done when verifying a downloaded update (package folder) and when reporting the binary hash (assets),
+ * and of its building blocks: a single file, and the digest of the sorted manifest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HashingBenchmark {
+    /* file count x file size in bytes, a few large bundles and many small modules */
+    @Param({"100x1048576", "10000x2048"})
+    public String shape;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private SyntheticWwwTree tree;
+    private File packageFolder;
+    private File largestFile;
+    private List<String> manifestEntries;
+
+    @Setup(Level.Trial)
+    public void createTree() throws Exception {
+        tree = SyntheticWwwTree.create(shape);
+        packageFolder = new File(tree.filesDir, SyntheticWwwTree.PACKAGE_PATH);
+        largestFile = new File(packageFolder, "www/folder0/file0.js");
+
+        manifestEntries = new ArrayList<String>();
+        int fileCount = Integer.parseInt(shape.split("x")[0]);
+        for (int i = 0; i < fileCount; i++) {
+            manifestEntries.add("www/folder" + (i / 100) + "/file" + i + ".js:" + UpdateHashKernel.hashFile(largestFile));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() {
+        tree.delete();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdCache {
+        @Setup(Level.Invocation)
+        public void deleteHashCache(HashingBenchmark benchmark) {
+            UpdateHashCache.getCacheFile(benchmark.packageFolder).delete();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmCache {
+        @Setup(Level.Iteration)
+        public void fillHashCache(HashingBenchmark benchmark) throws Exception {
+            UpdateHashUtils.getHashForPath(benchmark.tree.activity, SyntheticWwwTree.PACKAGE_PATH, benchmark.threads);
+        }
+    }
+
+    /**
+     * Verification of a freshly installed update: every file is read and hashed.
+     */
+    @Benchmark
+    public String packageFolderColdCache(ColdCache coldCache) throws Exception {
+        return UpdateHashUtils.getHashForPath(tree.activity, SyntheticWwwTree.PACKAGE_PATH, threads);
+    }
+
+    /**
+     * Repeated hashing of an unchanged update: the file hashes come from the hash cache.
+     */
+    @Benchmark
+    public String packageFolderWarmCache(WarmCache warmCache) throws Exception {
+        return UpdateHashUtils.getHashForPath(tree.activity, SyntheticWwwTree.PACKAGE_PATH, threads);
+    }
+
+    /**
+     * Hashing of the www assets of the binary, listed from the assets index.
+     */
+    @Benchmark
+    public String binaryAssets() throws Exception {
+        return UpdateHashUtils.getHashForPath(tree.activity, null, threads);
+    }
+
+    @Benchmark
+    public String singleFile() throws Exception {
+        return UpdateHashKernel.hashFile(largestFile);
+    }
+
+    @Benchmark
+    public String manifestDigest() throws Exception {
+        UpdateManifestDigest manifestDigest = new UpdateManifestDigest();
+        for (String manifestEntry : manifestEntries) {
+            manifestDigest.addEntry(manifestEntry);
+        }
+
+        return manifestDigest.getHash();
+    }
+}
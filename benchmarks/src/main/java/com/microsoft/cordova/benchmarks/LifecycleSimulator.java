@@ -0,0 +1,602 @@
+package com.microsoft.cordova.benchmarks;
+
+import android.content.Context;
+
+import com.microsoft.cordova.CodePushBootSnapshot;
+import com.microsoft.cordova.CodePushException;
+import com.microsoft.cordova.CodePushFailedUpdateRegistry;
+import com.microsoft.cordova.CodePushJournalStorage;
+import com.microsoft.cordova.CodePushLifecycle;
+import com.microsoft.cordova.CodePushPackageManager;
+import com.microsoft.cordova.CodePushPackageMetadata;
+import com.microsoft.cordova.CodePushPreferences;
+import com.microsoft.cordova.CodePushStorage;
+import com.microsoft.cordova.InstallMode;
+import com.microsoft.cordova.InstallOptions;
+import com.microsoft.cordova.ReportingStatus;
+import com.microsoft.cordova.StatusReport;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Drives CodePushLifecycle through random sequences of application starts, installs, restarts, pauses, resumes, confirmations and kills,
+ * without a device or a web view, on the journal storage of a temporary directory. Each sequence starts from a fresh install of the binary.
+ * After every step, the install state, the current package and the status reports are checked against a model of the expected lifecycle,
+ * and the time and the storage reads and writes of each transition are printed at the end.
+ *
+ * The sequences only depend on the seed, which is printed so that a failing run can be replayed:
+ *
+ *   gradle -p benchmarks simulateLifecycle -PsimulatorSequences=2000 -PsimulatorSeed=42
+ */
+public class LifecycleSimulator {
+    private static final String APP_VERSION = "1.0.0";
+    private static final long APK_BUILD_TIME = 1500000000000L;
+    private static final String DEPLOYMENT_KEY = "simulator-deployment-key";
+    private static final int DEFAULT_SEQUENCE_COUNT = 1000;
+    private static final int STEPS_PER_SEQUENCE = 40;
+    private static final int HISTORY_LENGTH = 25;
+    private static final int[] MINIMUM_BACKGROUND_DURATIONS = {0, 10, 30};
+    private static final int MAXIMUM_TIME_STEP_MS = 60000;
+
+    private final Random random;
+    private final File rootDir;
+    private final Map<String, TransitionMetrics> transitionMetrics = new LinkedHashMap<String, TransitionMetrics>();
+    private final List<String> reports = new ArrayList<String>();
+    private final ArrayDeque<String> history = new ArrayDeque<String>();
+    private File filesDir;
+    private Context context;
+    private ExpectedState expected;
+    private SimulatedProcess process;
+    private long clockMs;
+    private int labelCount;
+    private long transitionStartNanos;
+    private long transitionStartReads;
+    private long transitionStartWrites;
+
+    private static class TransitionMetrics {
+        int count;
+        long totalNanos;
+        long maxNanos;
+        long reads;
+        long writes;
+    }
+
+    /**
+     * What the lifecycle is expected to have persisted, which survives the process.
+     */
+    private static class ExpectedState {
+        String currentLabel;
+        String oldLabel;
+        InstallOptions pendingInstall;
+        boolean installNeedsConfirmation;
+        boolean binaryFirstRun = true;
+        final LinkedHashSet<String> failedLabels = new LinkedHashSet<String>();
+        final List<String> reports = new ArrayList<String>();
+
+        void addFailedLabel(String label) {
+            failedLabels.add(label);
+            Iterator<String> oldestLabels = failedLabels.iterator();
+            while (failedLabels.size() > CodePushFailedUpdateRegistry.DEFAULT_CAPACITY) {
+                oldestLabels.next();
+                oldestLabels.remove();
+            }
+        }
+    }
+
+    /**
+     * The state of one run of the application, which is lost when it is killed.
+     */
+    private class SimulatedProcess implements CodePushLifecycle.Host {
+        final CodePushJournalStorage journalStorage;
+        final CountingStorage storage;
+        final CodePushPackageManager packageManager;
+        final CodePushLifecycle lifecycle;
+
+        /* the expected state of this run */
+        boolean didUpdate;
+        String rolledBackLabel;
+        boolean paused;
+        long pausedAtMs;
+
+        SimulatedProcess() {
+            journalStorage = CodePushPreferences.getJournalStorage(filesDir, new NoLegacyStorage());
+            storage = new CountingStorage(journalStorage);
+            CodePushPreferences preferences = new CodePushPreferences(storage, CodePushFailedUpdateRegistry.DEFAULT_CAPACITY);
+            packageManager = new CodePushPackageManager(context, preferences);
+            lifecycle = new CodePushLifecycle(packageManager, preferences,
+                    new CodePushBootSnapshot("simulator", APP_VERSION, APK_BUILD_TIME, "index.html"), DEPLOYMENT_KEY, this);
+        }
+
+        @Override
+        public void navigateToCurrentPackage() {
+            /* the start page is only loaded by a web view */
+        }
+
+        @Override
+        public void reloadCurrentPackage() {
+            /* the start page is only loaded by a web view */
+        }
+
+        @Override
+        public void reportStatus(StatusReport statusReport) {
+            try {
+                JSONObject report = new JSONObject(statusReport.serialize());
+                reports.add(describeReport(report.getInt("status"), report.optString("label", null)));
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A device on which the plugin never ran, so there is nothing to migrate.
+     */
+    private static class NoLegacyStorage implements CodePushStorage {
+        @Override
+        public String getString(String group, String key, String defaultValue) {
+            return defaultValue;
+        }
+
+        @Override
+        public int getInt(String group, String key, int defaultValue) {
+            return defaultValue;
+        }
+
+        @Override
+        public boolean getBoolean(String group, String key, boolean defaultValue) {
+            return defaultValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String group, String key, Set<String> defaultValue) {
+            return defaultValue;
+        }
+
+        @Override
+        public Map<String, ?> getAll(String group) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Editor edit(String group) {
+            return new Editor() {
+                @Override
+                public Editor putString(String key, String value) {
+                    return this;
+                }
+
+                @Override
+                public Editor putInt(String key, int value) {
+                    return this;
+                }
+
+                @Override
+                public Editor putBoolean(String key, boolean value) {
+                    return this;
+                }
+
+                @Override
+                public Editor putStringSet(String key, Set<String> value) {
+                    return this;
+                }
+
+                @Override
+                public Editor remove(String key) {
+                    return this;
+                }
+
+                @Override
+                public Editor clear() {
+                    return this;
+                }
+
+                @Override
+                public boolean commit() {
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public boolean commit(Editor... editors) {
+            return true;
+        }
+    }
+
+    private LifecycleSimulator(File rootDir, long seed) {
+        this.rootDir = rootDir;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sequenceCount = args.length > 0 && !args[0].isEmpty() ? Integer.parseInt(args[0]) : DEFAULT_SEQUENCE_COUNT;
+        long seed = args.length > 1 && !args[1].isEmpty() ? Long.parseLong(args[1]) : new Random().nextLong();
+        System.out.println(String.format(Locale.US, "seed %d", seed));
+
+        File rootDir = File.createTempFile("codepush-simulator-", "");
+        if (!rootDir.delete() || !rootDir.mkdirs()) {
+            throw new IOException("Could not create " + rootDir.getPath());
+        }
+
+        int exitCode = 0;
+        LifecycleSimulator simulator = new LifecycleSimulator(rootDir, seed);
+        int sequence = 0;
+        int step = 0;
+        try {
+            for (; sequence < sequenceCount; sequence++) {
+                simulator.beginSequence(sequence);
+                for (step = 0; step < STEPS_PER_SEQUENCE; step++) {
+                    simulator.step();
+                }
+
+                simulator.endSequence();
+            }
+
+            simulator.printMetrics(sequenceCount, seed);
+        } catch (Throwable e) {
+            System.out.println(String.format(Locale.US, "sequence %d failed at step %d: %s", sequence, step, e));
+            System.out.println("last steps:");
+            for (String operation : simulator.history) {
+                System.out.println("  " + operation);
+            }
+
+            System.out.println(String.format(Locale.US, "replay with -PsimulatorSequences=%d -PsimulatorSeed=%d", sequence + 1, seed));
+            e.printStackTrace(System.out);
+            exitCode = 1;
+        } finally {
+            simulator.killProcess();
+            deleteRecursively(rootDir);
+        }
+
+        /* the worker threads of the plugin are only stopped with the process */
+        System.exit(exitCode);
+    }
+
+    /**
+     * Starts a sequence on a fresh install of the binary.
+     */
+    private void beginSequence(int sequence) {
+        this.filesDir = new File(rootDir, "sequence-" + sequence + "/files");
+        this.context = new Context(filesDir, new File(rootDir, "sequence-" + sequence + "/assets"));
+        this.expected = new ExpectedState();
+        this.reports.clear();
+        this.history.clear();
+    }
+
+    private void endSequence() {
+        killProcess();
+        deleteRecursively(filesDir.getParentFile());
+    }
+
+    /**
+     * Makes one random transition allowed in the current state of the application, then checks the state it left.
+     */
+    private void step() throws IOException, CodePushException {
+        if (process == null) {
+            start();
+        } else if (process.paused) {
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                resume();
+            } else if (choice < 8) {
+                advanceClock();
+            } else {
+                kill();
+            }
+        } else {
+            int choice = random.nextInt(100);
+            if (choice < 20) {
+                install();
+            } else if (choice < 40) {
+                notifyApplicationReady();
+            } else if (choice < 50) {
+                restart();
+            } else if (choice < 65) {
+                pause();
+            } else if (choice < 80) {
+                kill();
+            } else {
+                advanceClock();
+            }
+        }
+
+        checkState();
+    }
+
+    private void start() throws CodePushException {
+        record("start");
+        begin();
+        process = new SimulatedProcess();
+        process.lifecycle.onStart(clockMs);
+        end("start");
+        expectStart();
+    }
+
+    /**
+     * What the JavaScript layer does when restartApplication is called, which only restarts the lifecycle if there is a current package.
+     */
+    private void restart() throws CodePushException {
+        record("restart");
+        if (expected.currentLabel == null) {
+            return;
+        }
+
+        begin();
+        process.lifecycle.restart(clockMs);
+        end("restart");
+        expectStart();
+    }
+
+    /**
+     * A start applies the pending install, or rolls back the current package if it is still not confirmed.
+     */
+    private void expectStart() {
+        if (expected.pendingInstall == null) {
+            if (expected.installNeedsConfirmation) {
+                expected.addFailedLabel(expected.currentLabel);
+                process.rolledBackLabel = expected.currentLabel;
+                expected.currentLabel = expected.oldLabel;
+                expected.oldLabel = null;
+                expected.installNeedsConfirmation = false;
+            }
+        } else {
+            expectPendingInstallApplied();
+        }
+    }
+
+    private void expectPendingInstallApplied() {
+        expected.pendingInstall = null;
+        expected.installNeedsConfirmation = true;
+        process.didUpdate = true;
+    }
+
+    private void pause() {
+        record("pause at " + clockMs);
+        process.lifecycle.onPause(clockMs);
+        process.paused = true;
+        process.pausedAtMs = clockMs;
+    }
+
+    private void resume() throws CodePushException {
+        record("resume at " + clockMs);
+        begin();
+        process.lifecycle.onStart(clockMs);
+        end("resume");
+        process.paused = false;
+
+        InstallOptions pendingInstall = expected.pendingInstall;
+        if (pendingInstall != null && pendingInstall.installMode == InstallMode.ON_NEXT_RESUME
+                && (clockMs - process.pausedAtMs) / 1000 >= pendingInstall.minimumBackgroundDuration) {
+            expectPendingInstallApplied();
+        }
+    }
+
+    private void advanceClock() {
+        int durationMs = random.nextInt(MAXIMUM_TIME_STEP_MS);
+        record("wait " + durationMs + " ms");
+        clockMs += durationMs;
+    }
+
+    /**
+     * Ends the process, as a crash or the system would.
+     */
+    private void kill() {
+        record("kill");
+        killProcess();
+    }
+
+    /**
+     * What the JavaScript layer and execInstall do to install an update: the package folder is written, the current package
+     * becomes the old one and the new package is recorded as current, then it is either loaded right away or left pending.
+     */
+    private void install() throws IOException, CodePushException {
+        String label = "v" + (++labelCount);
+        InstallMode installMode = InstallMode.values()[random.nextInt(InstallMode.values().length)];
+        int minimumBackgroundDuration = MINIMUM_BACKGROUND_DURATIONS[random.nextInt(MINIMUM_BACKGROUND_DURATIONS.length)];
+        record("install " + label + " " + installMode + (installMode == InstallMode.ON_NEXT_RESUME ? " after " + minimumBackgroundDuration + " s" : ""));
+
+        String localPath = "/codepush/deploy/versions/" + label;
+        writeFile(new File(filesDir, localPath + "/www/index.html"), "<html></html>");
+
+        File currentPackageFile = new File(filesDir, CodePushPackageManager.CODEPUSH_CURRENT_PACKAGE_PATH);
+        File oldPackageFile = new File(filesDir, CodePushPackageManager.CODEPUSH_OLD_PACKAGE_PATH);
+        if (currentPackageFile.exists()) {
+            oldPackageFile.delete();
+            currentPackageFile.renameTo(oldPackageFile);
+        }
+
+        Map<String, Object> metadata = new HashMap<String, Object>();
+        metadata.put("deploymentKey", DEPLOYMENT_KEY);
+        metadata.put("label", label);
+        metadata.put("appVersion", APP_VERSION);
+        metadata.put("packageHash", label);
+        metadata.put("nativeBuildTime", String.valueOf(APK_BUILD_TIME));
+        metadata.put("localPath", localPath);
+        writeFile(currentPackageFile, new JSONObject(metadata).toString());
+
+        begin();
+        process.packageManager.invalidatePackageMetadata();
+        if (installMode == InstallMode.IMMEDIATE) {
+            process.lifecycle.markUpdate();
+        } else {
+            process.packageManager.savePendingInstall(new InstallOptions(installMode, minimumBackgroundDuration));
+        }
+
+        end("install");
+
+        if (expected.currentLabel != null) {
+            expected.oldLabel = expected.currentLabel;
+        }
+
+        expected.currentLabel = label;
+        if (installMode == InstallMode.IMMEDIATE) {
+            expected.installNeedsConfirmation = true;
+            process.didUpdate = true;
+        } else {
+            expected.pendingInstall = new InstallOptions(installMode, minimumBackgroundDuration);
+        }
+    }
+
+    private void notifyApplicationReady() throws CodePushException {
+        record("notifyApplicationReady");
+        begin();
+        process.lifecycle.notifyApplicationReady();
+        end("confirm");
+
+        if (expected.binaryFirstRun) {
+            expected.binaryFirstRun = false;
+            expected.reports.add(describeReport(ReportingStatus.STORE_VERSION.getValue(), null));
+        } else if (expected.installNeedsConfirmation) {
+            expected.reports.add(describeReport(ReportingStatus.UPDATE_CONFIRMED.getValue(), expected.currentLabel));
+        } else if (process.rolledBackLabel != null) {
+            expected.reports.add(describeReport(ReportingStatus.UPDATE_ROLLED_BACK.getValue(), process.rolledBackLabel));
+            process.rolledBackLabel = null;
+        }
+
+        expected.installNeedsConfirmation = false;
+    }
+
+    /**
+     * Checks the state left by the last step against the model. The state of a killed process is checked by the next start.
+     */
+    private void checkState() {
+        check(reports.equals(expected.reports), "reported " + reports + " instead of " + expected.reports);
+        if (process == null) {
+            return;
+        }
+
+        CodePushPackageManager packageManager = process.packageManager;
+        CodePushPackageMetadata currentPackage = packageManager.getCurrentPackageMetadata();
+        String currentLabel = currentPackage != null ? currentPackage.label : null;
+        check(equal(currentLabel, expected.currentLabel), "the current package is " + currentLabel + " instead of " + expected.currentLabel);
+        CodePushPackageMetadata oldPackage = packageManager.getOldPackageMetadata();
+        String oldLabel = oldPackage != null ? oldPackage.label : null;
+        check(equal(oldLabel, expected.oldLabel), "the old package is " + oldLabel + " instead of " + expected.oldLabel);
+
+        String pendingInstall = describePendingInstall(packageManager.getPendingInstall());
+        String expectedPendingInstall = describePendingInstall(expected.pendingInstall);
+        check(equal(pendingInstall, expectedPendingInstall), "the pending install is " + pendingInstall + " instead of " + expectedPendingInstall);
+        check(packageManager.installNeedsConfirmation() == expected.installNeedsConfirmation,
+                "the install " + (expected.installNeedsConfirmation ? "does not need" : "needs") + " a confirmation");
+        check(packageManager.isBinaryFirstRun() == expected.binaryFirstRun,
+                "the binary first run is " + (expected.binaryFirstRun ? "reported" : "not reported"));
+        check(process.lifecycle.didUpdate() == process.didUpdate, "didUpdate is " + process.lifecycle.didUpdate());
+
+        for (String failedLabel : expected.failedLabels) {
+            check(packageManager.isFailedUpdate(failedLabel), "the update " + failedLabel + " is not recorded as failed");
+        }
+
+        check(expected.currentLabel == null || !packageManager.isFailedUpdate(expected.currentLabel),
+                "the current package " + expected.currentLabel + " is recorded as failed");
+    }
+
+    /**
+     * Ends the current process. Its background writes are completed first, since a process killed by the system
+     * in the middle of a write is not a case this simulation covers.
+     */
+    private void killProcess() {
+        if (process != null) {
+            CodePushPreferences.releaseJournalStorage(filesDir);
+            process = null;
+        }
+    }
+
+    private void record(String operation) {
+        if (history.size() == HISTORY_LENGTH) {
+            history.removeFirst();
+        }
+
+        history.addLast(operation);
+    }
+
+    private void begin() {
+        transitionStartReads = process != null ? process.storage.getReadCount() : 0;
+        transitionStartWrites = process != null ? process.storage.getWriteCount() : 0;
+        transitionStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the transition that began with the last call to begin(), in the process that is running at its end.
+     */
+    private void end(String transition) {
+        long durationNanos = System.nanoTime() - transitionStartNanos;
+        TransitionMetrics metrics = transitionMetrics.get(transition);
+        if (metrics == null) {
+            metrics = new TransitionMetrics();
+            transitionMetrics.put(transition, metrics);
+        }
+
+        metrics.count++;
+        metrics.totalNanos += durationNanos;
+        metrics.maxNanos = Math.max(metrics.maxNanos, durationNanos);
+        metrics.reads += process.storage.getReadCount() - transitionStartReads;
+        metrics.writes += process.storage.getWriteCount() - transitionStartWrites;
+    }
+
+    private void printMetrics(int sequenceCount, long seed) {
+        System.out.println(String.format(Locale.US, "%d sequences of %d steps, seed %d, %d updates installed", sequenceCount, STEPS_PER_SEQUENCE, seed, labelCount));
+        System.out.println(String.format(Locale.US, "%-10s %10s %12s %12s %12s %12s", "transition", "count", "mean (us)", "max (us)", "reads", "writes"));
+        for (Map.Entry<String, TransitionMetrics> entry : transitionMetrics.entrySet()) {
+            TransitionMetrics metrics = entry.getValue();
+            System.out.println(String.format(Locale.US, "%-10s %10d %12.1f %12.1f %12.1f %12.1f", entry.getKey(), metrics.count,
+                    metrics.totalNanos / 1000.0 / metrics.count, metrics.maxNanos / 1000.0,
+                    (double) metrics.reads / metrics.count, (double) metrics.writes / metrics.count));
+        }
+    }
+
+    private static String describeReport(int status, String label) {
+        return status + (label != null ? " " + label : "");
+    }
+
+    private static String describePendingInstall(InstallOptions pendingInstall) {
+        return pendingInstall != null ? pendingInstall.installMode + " after " + pendingInstall.minimumBackgroundDuration + " s" : null;
+    }
+
+    private static boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,70 @@
+package com.microsoft.cordova.benchmarks;
+
+import com.microsoft.cordova.CodePushPackageMetadata;
+import com.microsoft.cordova.UpdateHashUtils;
+import com.microsoft.cordova.Utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The small reads done on every start of the app: listing the www assets, and reading the metadata of the current package.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ManifestBenchmark {
+    /* the assets index is loaded once per process, which is fine since JMH forks for every parameter value */
+    @Param({"100x1048576", "10000x2048"})
+    public String shape;
+
+    private SyntheticWwwTree tree;
+    private File metadataFile;
+
+    @Setup
+    public void createTree() throws Exception {
+        tree = SyntheticWwwTree.create(shape);
+        metadataFile = new File(tree.filesDir, SyntheticWwwTree.CURRENT_PACKAGE_METADATA_PATH);
+    }
+
+    @TearDown
+    public void deleteTree() {
+        tree.delete();
+    }
+
+    @Benchmark
+    public String[] listAssets() throws Exception {
+        return Utilities.getAssetsList(tree.activity.getAssets(), "www", null);
+    }
+
+    @Benchmark
+    public String folderFingerprint() {
+        return UpdateHashUtils.getFolderFingerprint(new File(tree.filesDir, SyntheticWwwTree.PACKAGE_PATH));
+    }
+
+    @Benchmark
+    public String readMetadataFile() throws Exception {
+        return Utilities.readFileContents(metadataFile);
+    }
+
+    @Benchmark
+    public CodePushPackageMetadata parseMetadataFile() {
+        return CodePushPackageMetadata.getPackageMetadata(metadataFile.getPath());
+    }
+}
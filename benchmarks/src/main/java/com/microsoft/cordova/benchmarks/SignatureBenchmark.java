@@ -0,0 +1,68 @@
+package com.microsoft.cordova.benchmarks;
+
+import com.microsoft.cordova.CodePushSignatureVerifier;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verification of the signature of an update, with the verifier created for every verification as before it was cached,
+ * and with the verifier cached per public key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SignatureBenchmark {
+    private static final String CONTENT_HASH = "0f1e2d3c4b5a69788796a5b4c3d2e1f00f1e2d3c4b5a69788796a5b4c3d2e1f0";
+
+    private String publicKey;
+    private String signature;
+
+    @Setup
+    public void signUpdate() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        /* formatted like the key of the config.xml preference */
+        publicKey = "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes("UTF-8")).encodeToString(keyPair.getPublic().getEncoded())
+                + "\n-----END PUBLIC KEY-----";
+
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.RS256), new JWTClaimsSet.Builder().claim("contentHash", CONTENT_HASH).build());
+        signedJWT.sign(new RSASSASigner(keyPair.getPrivate()));
+        signature = signedJWT.serialize();
+    }
+
+    @Benchmark
+    public Map<String, Object> uncachedVerifier() throws Exception {
+        return CodePushSignatureVerifier.verifyAndDecodeJWT(signature, CodePushSignatureVerifier.createVerifier(publicKey));
+    }
+
+    @Benchmark
+    public Map<String, Object> cachedVerifier() throws Exception {
+        return CodePushSignatureVerifier.verifyAndDecodeJWT(signature, CodePushSignatureVerifier.getVerifier(publicKey));
+    }
+}
@@ -0,0 +1,155 @@
+package com.microsoft.cordova.benchmarks;
+
+import android.app.Activity;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * A www tree of generated files, laid out both as the assets of the binary and as a deployed package,
+ * with the assets index that the build script would generate and the metadata of the current package.
+ */
+public class SyntheticWwwTree {
+    public static final String PACKAGE_PATH = "/codepush/deploy/versions/synthetic";
+    public static final String CURRENT_PACKAGE_METADATA_PATH = "/codepush/currentPackage.json";
+
+    private static final int FILES_PER_FOLDER = 100;
+    private static final int ASSETS_INDEX_MAGIC = 0x43504149;
+    private static final int ASSETS_INDEX_VERSION = 1;
+    private static final long FILE_AGE_MS = 60 * 60 * 1000;
+
+    public final File rootDir;
+    public final File filesDir;
+    public final File assetsDir;
+    public final Activity activity;
+
+    private SyntheticWwwTree(File rootDir) {
+        this.rootDir = rootDir;
+        this.filesDir = new File(rootDir, "files");
+        this.assetsDir = new File(rootDir, "assets");
+        this.activity = new Activity(filesDir, assetsDir);
+    }
+
+    /**
+     * Creates a tree in a new temporary directory.
+     *
+     * @param shape the number of files and their size in bytes, for example "100x1048576"
+     */
+    public static SyntheticWwwTree create(String shape) throws IOException {
+        String[] dimensions = shape.split("x");
+        int fileCount = Integer.parseInt(dimensions[0]);
+        int fileSize = Integer.parseInt(dimensions[1]);
+
+        File rootDir = File.createTempFile("codepush-benchmark-", "");
+        if (!rootDir.delete() || !rootDir.mkdirs()) {
+            throw new IOException("Could not create " + rootDir.getPath());
+        }
+
+        SyntheticWwwTree tree = new SyntheticWwwTree(rootDir);
+        tree.writeFiles(fileCount, fileSize);
+        return tree;
+    }
+
+    private void writeFiles(int fileCount, int fileSize) throws IOException {
+        File packageWwwDir = new File(filesDir, PACKAGE_PATH + "/www");
+        File assetsWwwDir = new File(assetsDir, "www");
+        Map<String, List<String>> assetDirectories = new TreeMap<String, List<String>>();
+        addAssetDirectoryEntry(assetDirectories, "", "www");
+
+        /* the same content on every run, so that the results are comparable */
+        Random random = new Random(fileCount * 31L + fileSize);
+        byte[] content = new byte[fileSize];
+        for (int i = 0; i < fileCount; i++) {
+            String folderName = "folder" + (i / FILES_PER_FOLDER);
+            String fileName = "file" + i + ".js";
+            if (i % FILES_PER_FOLDER == 0) {
+                addAssetDirectoryEntry(assetDirectories, "www", folderName);
+            }
+
+            addAssetDirectoryEntry(assetDirectories, "www/" + folderName, fileName);
+            random.nextBytes(content);
+            writeFile(new File(packageWwwDir, folderName + "/" + fileName), content);
+            writeFile(new File(assetsWwwDir, folderName + "/" + fileName), content);
+        }
+
+        writeFile(new File(packageWwwDir, "index.html"), "<html></html>".getBytes("UTF-8"));
+        writeFile(new File(assetsWwwDir, "index.html"), "<html></html>".getBytes("UTF-8"));
+        addAssetDirectoryEntry(assetDirectories, "www", "index.html");
+        writeAssetsIndex(assetDirectories);
+
+        String metadata = "{\"deploymentKey\":\"benchmark-deployment-key\",\"label\":\"v1\",\"appVersion\":\"1.0.0\","
+                + "\"isMandatory\":false,\"packageHash\":\"" + fileCount + "x" + fileSize + "\",\"packageSize\":" + ((long) fileCount * fileSize) + ","
+                + "\"nativeBuildTime\":\"-1\",\"localPath\":\"" + PACKAGE_PATH + "\"}";
+        writeFile(new File(filesDir, CURRENT_PACKAGE_METADATA_PATH), metadata.getBytes("UTF-8"));
+    }
+
+    private static void addAssetDirectoryEntry(Map<String, List<String>> assetDirectories, String directoryPath, String entryName) {
+        List<String> entries = assetDirectories.get(directoryPath);
+        if (entries == null) {
+            entries = new ArrayList<String>();
+            assetDirectories.put(directoryPath, entries);
+        }
+
+        entries.add(entryName);
+        String entryPath = directoryPath.isEmpty() ? entryName : directoryPath + "/" + entryName;
+        if (!entryName.contains(".") && !assetDirectories.containsKey(entryPath)) {
+            assetDirectories.put(entryPath, new ArrayList<String>());
+        }
+    }
+
+    /**
+     * Same format as the codePushCreateAssetIndex task of build-extras.gradle.
+     */
+    private void writeAssetsIndex(Map<String, List<String>> assetDirectories) throws IOException {
+        DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(new File(assetsDir, "codepush.assetsindex")));
+        try {
+            outputStream.writeInt(ASSETS_INDEX_MAGIC);
+            outputStream.writeInt(ASSETS_INDEX_VERSION);
+            outputStream.writeInt(assetDirectories.size());
+            for (Map.Entry<String, List<String>> assetDirectory : assetDirectories.entrySet()) {
+                outputStream.writeUTF(assetDirectory.getKey());
+                outputStream.writeInt(assetDirectory.getValue().size());
+                for (String entryName : assetDirectory.getValue()) {
+                    outputStream.writeUTF(entryName);
+                }
+            }
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+
+        /* files modified in the last seconds are never served from the hash cache */
+        file.setLastModified(System.currentTimeMillis() - FILE_AGE_MS);
+    }
+
+    public void delete() {
+        deleteRecursively(rootDir);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+
+        file.delete();
+    }
+}
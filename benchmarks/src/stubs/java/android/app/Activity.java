@@ -0,0 +1,18 @@
+package android.app;
+
+import android.content.Context;
+
+import java.io.File;
+
+/**
+ * Stand-in for the Android activity, backed by the same directories as its context.
+ */
+public class Activity extends Context {
+    public Activity(File filesDir, File assetsDir) {
+        super(filesDir, assetsDir);
+    }
+
+    public void runOnUiThread(Runnable action) {
+        action.run();
+    }
+}
@@ -0,0 +1,62 @@
+package android.content;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+
+import java.io.File;
+
+/**
+ * File-system-backed stand-in for the Android context: the files directory and the assets are plain directories.
+ */
+public class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    private final File filesDir;
+    private final AssetManager assetManager;
+    private final ApplicationInfo applicationInfo = new ApplicationInfo();
+
+    public Context(File filesDir, File assetsDir) {
+        this.filesDir = filesDir;
+        this.assetManager = new AssetManager(assetsDir);
+        this.applicationInfo.sourceDir = new File(assetsDir, "base.apk").getPath();
+    }
+
+    public File getFilesDir() {
+        filesDir.mkdirs();
+        return filesDir;
+    }
+
+    public AssetManager getAssets() {
+        return assetManager;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public ApplicationInfo getApplicationInfo() {
+        return applicationInfo;
+    }
+
+    public String getPackageName() {
+        return "com.microsoft.cordova.benchmarks";
+    }
+
+    public PackageManager getPackageManager() {
+        return new PackageManager();
+    }
+
+    public Resources getResources() {
+        return new Resources();
+    }
+
+    public String getString(int resourceId) {
+        throw new Resources.NotFoundException();
+    }
+
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        throw new UnsupportedOperationException("SharedPreferences are not available outside of Android, use a CodePushStorage instead.");
+    }
+}
@@ -0,0 +1,39 @@
+package android.content;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declaration of the Android interface, only needed to compile CodePushSharedPreferencesStorage.
+ */
+public interface SharedPreferences {
+    String getString(String key, String defaultValue);
+
+    Set<String> getStringSet(String key, Set<String> defaultValue);
+
+    int getInt(String key, int defaultValue);
+
+    boolean getBoolean(String key, boolean defaultValue);
+
+    Map<String, ?> getAll();
+
+    Editor edit();
+
+    interface Editor {
+        Editor putString(String key, String value);
+
+        Editor putStringSet(String key, Set<String> value);
+
+        Editor putInt(String key, int value);
+
+        Editor putBoolean(String key, boolean value);
+
+        Editor remove(String key);
+
+        Editor clear();
+
+        boolean commit();
+
+        void apply();
+    }
+}
@@ -0,0 +1,17 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the Android package manager, which reports a fixed application version.
+ */
+public class PackageManager {
+    public static final String APP_VERSION = "1.0.0";
+
+    public static class NameNotFoundException extends Exception {
+    }
+
+    public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.versionName = APP_VERSION;
+        return packageInfo;
+    }
+}
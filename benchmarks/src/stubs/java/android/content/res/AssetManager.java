@@ -0,0 +1,22 @@
+package android.content.res;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stand-in for the Android asset manager, which serves the files of a directory.
+ * Missing assets fail with a FileNotFoundException, like the assets that aapt left out of the APK.
+ */
+public class AssetManager {
+    private final File assetsDir;
+
+    public AssetManager(File assetsDir) {
+        this.assetsDir = assetsDir;
+    }
+
+    public InputStream open(String fileName) throws IOException {
+        return new FileInputStream(new File(assetsDir, fileName));
+    }
+}
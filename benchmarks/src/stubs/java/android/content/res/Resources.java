@@ -0,0 +1,13 @@
+package android.content.res;
+
+/**
+ * Stand-in for the Android resources, which contain no resource.
+ */
+public class Resources {
+    public static class NotFoundException extends RuntimeException {
+    }
+
+    public int getIdentifier(String name, String defType, String defPackage) {
+        return 0;
+    }
+}
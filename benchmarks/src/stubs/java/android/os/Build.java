@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stand-in for the Android build information, which reports a device running Android 8.0.
+ */
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.O;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int LOLLIPOP = 21;
+        public static final int N = 24;
+        public static final int O = 26;
+    }
+}
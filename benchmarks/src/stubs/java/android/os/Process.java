@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * Stand-in for the Android process. Thread priorities are left to the JVM.
+ */
+public class Process {
+    public static final int THREAD_PRIORITY_DEFAULT = 0;
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+    public static final int THREAD_PRIORITY_LOWEST = 19;
+
+    public static void setThreadPriority(int priority) {
+    }
+}
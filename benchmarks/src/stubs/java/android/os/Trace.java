@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Stand-in for the Android system trace, which records nothing.
+ */
+public final class Trace {
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
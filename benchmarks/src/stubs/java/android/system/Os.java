@@ -0,0 +1,45 @@
+package android.system;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Stand-in for the Android system calls, implemented with java.nio.file. Requires a file system with hard links.
+ * The JVM cannot open directories as file descriptors, so directories are not synced.
+ */
+public final class Os {
+    public static void link(String oldPath, String newPath) throws ErrnoException {
+        try {
+            Files.createLink(Paths.get(newPath), Paths.get(oldPath));
+        } catch (IOException e) {
+            throw new ErrnoException("link", e);
+        }
+    }
+
+    public static StructStat stat(String path) throws ErrnoException {
+        try {
+            return new StructStat(((Number) Files.getAttribute(Paths.get(path), "unix:nlink")).longValue());
+        } catch (IOException e) {
+            throw new ErrnoException("stat", e);
+        } catch (UnsupportedOperationException e) {
+            throw new ErrnoException("stat", e);
+        }
+    }
+
+    public static FileDescriptor open(String path, int flags, int mode) throws ErrnoException {
+        if (!new File(path).exists()) {
+            throw new ErrnoException("open", null);
+        }
+
+        return new FileDescriptor();
+    }
+
+    public static void fsync(FileDescriptor fd) throws ErrnoException {
+    }
+
+    public static void close(FileDescriptor fd) throws ErrnoException {
+    }
+}
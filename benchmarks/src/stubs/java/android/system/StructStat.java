@@ -0,0 +1,9 @@
+package android.system;
+
+public final class StructStat {
+    public final long st_nlink;
+
+    public StructStat(long st_nlink) {
+        this.st_nlink = st_nlink;
+    }
+}
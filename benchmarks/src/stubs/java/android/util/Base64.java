@@ -0,0 +1,12 @@
+package android.util;
+
+/**
+ * Stand-in for the Android Base64 decoder, which ignores line breaks the same way as the MIME decoder.
+ */
+public class Base64 {
+    public static final int DEFAULT = 0;
+
+    public static byte[] decode(byte[] input, int flags) {
+        return java.util.Base64.getMimeDecoder().decode(input);
+    }
+}
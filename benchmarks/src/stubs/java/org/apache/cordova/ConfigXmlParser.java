@@ -0,0 +1,15 @@
+package org.apache.cordova;
+
+import android.content.Context;
+
+/**
+ * Stand-in for the Cordova config.xml parser, which reports the default launch URL.
+ */
+public class ConfigXmlParser {
+    public void parse(Context context) {
+    }
+
+    public String getLaunchUrl() {
+        return "file:///android_asset/www/index.html";
+    }
+}
@@ -56,13 +56,34 @@ var LocalPackage = (function (_super) {
             };
             var donePackageFileCopy = function (deploymentResult) {
                 _this.verifyPackage(deploymentResult, installError, function () {
-                    packageVerified(deploymentResult.deployDir);
+                    packageVerified(deploymentResult);
                 });
             };
-            var packageVerified = function (deployDir) {
-                _this.localPath = deployDir.fullPath;
-                _this.finishInstall(deployDir, installOptions, installSuccess, installError);
+            var packageVerified = function (deploymentResult) {
+                _this.localPath = deploymentResult.deployDir.fullPath;
+                _this.finishInstall(deploymentResult, installOptions, installSuccess, installError);
             };
+            if (cordova.platformId === "android") {
+                var archivePath = LocalPackage.DownloadDir + "/" + LocalPackage.PackageUpdateFileName;
+                cordova.exec(function (installResult) {
+                    FileUtil.getDataDirectory(newPackageLocation, false, function (deployDirError, deployDir) {
+                        if (deployDirError) {
+                            installError && installError(deployDirError);
+                        }
+                        else {
+                            donePackageFileCopy({
+                                deployDir: deployDir,
+                                isDiffUpdate: installResult.isDiffUpdate,
+                                contentHash: installResult.contentHash,
+                                contentFingerprint: installResult.contentFingerprint
+                            });
+                        }
+                    });
+                }, function (deployError) {
+                    installError && installError(new Error("Could not deploy package. " + deployError));
+                }, "CodePush", "installPackage", [archivePath, LocalPackage.DownloadUnzipDir, newPackageLocation]);
+                return;
+            }
             FileUtil.getDataDirectory(LocalPackage.DownloadUnzipDir, false, function (error, directoryEntry) {
                 var unzipPackage = function () {
                     FileUtil.getDataDirectory(LocalPackage.DownloadUnzipDir, true, function (innerError, unzipDir) {
@@ -132,6 +153,16 @@ var LocalPackage = (function (_super) {
         else {
             CodePushUtil.logMessage("Applying full update");
         }
+        if (cordova.platformId === "android") {
+            CodePushUtil.logMessage("Verifying package for folder path: " + deployDir.fullPath);
+            cordova.exec(function () {
+                successCallback();
+            }, function (verificationError) {
+                verificationFail(new Error(verificationError));
+            }, "CodePush", "verifyPackage", [deployDir.fullPath, this.packageHash, deploymentResult.contentHash || null,
+                deploymentResult.contentFingerprint || null, !!deploymentResult.isDiffUpdate]);
+            return;
+        }
         var isSignatureVerificationEnabled, isSignatureAppearedInBundle;
         var publicKey;
         this.getPublicKey(function (error, publicKeyResult) {
@@ -208,8 +239,9 @@ var LocalPackage = (function (_super) {
         CodePushUtil.logMessage("Verifying signature for folder path: " + deployDir.fullPath);
         cordova.exec(decodeSignatureSuccess, decodeSignatureFail, "CodePush", "decodeSignature", [publicKey, signature]);
     };
-    LocalPackage.prototype.finishInstall = function (deployDir, installOptions, installSuccess, installError) {
+    LocalPackage.prototype.finishInstall = function (deploymentResult, installOptions, installSuccess, installError) {
         var _this = this;
+        var deployDir = deploymentResult.deployDir;
         function backupPackageInformationFileIfNeeded(backupIfNeededDone) {
             NativeAppInfo.isPendingUpdate(function (pendingUpdate) {
                 if (pendingUpdate) {
@@ -222,7 +254,7 @@ var LocalPackage = (function (_super) {
         }
         LocalPackage.getCurrentOrDefaultPackage(function (oldPackage) {
             backupPackageInformationFileIfNeeded(function (backupError) {
-                _this.writeNewPackageMetadata(deployDir, function (writeMetadataError) {
+                _this.writeNewPackageMetadata(deploymentResult, function (writeMetadataError) {
                     if (writeMetadataError) {
                         installError && installError(writeMetadataError);
                     }
@@ -274,7 +306,7 @@ var LocalPackage = (function (_super) {
             });
         });
     };
-    LocalPackage.prototype.writeNewPackageMetadata = function (deployDir, writeMetadataCallback) {
+    LocalPackage.prototype.writeNewPackageMetadata = function (deploymentResult, writeMetadataCallback) {
         var _this = this;
         NativeAppInfo.getApplicationBuildTime(function (buildTimeError, timestamp) {
             NativeAppInfo.getApplicationVersion(function (appVersionError, appVersion) {
@@ -292,7 +324,9 @@ var LocalPackage = (function (_super) {
                     packageHash: _this.packageHash,
                     isFirstRun: false,
                     failedInstall: false,
-                    install: undefined
+                    install: undefined,
+                    contentHash: deploymentResult.contentFingerprint ? deploymentResult.contentHash : undefined,
+                    contentFingerprint: deploymentResult.contentFingerprint
                 };
                 LocalPackage.writeCurrentPackageInformation(currentPackageMetadata, writeMetadataCallback);
             });
@@ -361,7 +395,7 @@ var LocalPackage = (function (_super) {
         var handleError = function (e) {
             diffCallback(e, null);
         };
-        LocalPackage.copyCurrentPackage(newPackageLocation, [".codepushrelease"], function (currentPackageError) {
+        LocalPackage.copyCurrentPackage(newPackageLocation, [".codepushrelease", ".codepushhashcache"], function (currentPackageError) {
             LocalPackage.handleCleanDeployment(newPackageLocation, function (cleanDeployError) {
                 FileUtil.readFileEntry(diffManifest, function (error, content) {
                     if (error || currentPackageError || cleanDeployError) {
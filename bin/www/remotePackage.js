@@ -75,8 +75,33 @@ var RemotePackage = (function (_super) {
                     }, function (fileError) { return onFileError_1(fileError, "READ_FILE"); });
                 };
                 var filedir = cordova.file.dataDirectory + LocalPackage.DownloadDir + "/";
-                var filename = LocalPackage.PackageUpdateFileName;
-                cordova.plugin.http.downloadFile(this.downloadUrl, {}, {}, filedir + filename, onFileReady, onFileError_1);
+                var filename_1 = LocalPackage.PackageUpdateFileName;
+                if (cordova.platformId === "android") {
+                    var onNativeDownloadResult = function (result) {
+                        if (result.progress) {
+                            downloadProgress && downloadProgress(result.progress);
+                            return;
+                        }
+                        CodePushUtil.logMessage("Downloaded archive hash: " + result.archiveHash);
+                        FileUtil.getDataFile(LocalPackage.DownloadDir, filename_1, false, function (error, fileEntry) {
+                            if (error) {
+                                _this.isDownloading = false;
+                                CodePushUtil.invokeErrorCallback(error, errorCallback);
+                            }
+                            else {
+                                onFileReady(fileEntry);
+                            }
+                        });
+                    };
+                    var onNativeDownloadError = function (error) {
+                        _this.isDownloading = false;
+                        CodePushUtil.invokeErrorCallback(new Error(error), errorCallback);
+                    };
+                    cordova.exec(onNativeDownloadResult, onNativeDownloadError, "CodePush", "downloadPackage", [this.downloadUrl, LocalPackage.DownloadDir + "/" + filename_1]);
+                }
+                else {
+                    cordova.plugin.http.downloadFile(this.downloadUrl, {}, {}, filedir + filename_1, onFileReady, onFileError_1);
+                }
             }
         }
         catch (e) {
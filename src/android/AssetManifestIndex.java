@@ -0,0 +1,179 @@
+package com.microsoft.cordova;
+
+import android.content.res.AssetManager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory directory tree of the application assets, loaded once per process.
+ * Built from the compact index written at build time, or from cdvasset.manifest for builds that do not have it.
+ */
+public class AssetManifestIndex {
+    private static final String ASSETS_INDEX_FILENAME = "codepush.assetsindex";
+    private static final String ASSETS_MANIFEST_FILENAME = "cdvasset.manifest";
+    private static final int ASSETS_INDEX_MAGIC = 0x43504149;
+    private static final int ASSETS_INDEX_VERSION = 1;
+
+    private static volatile AssetManifestIndex instance;
+
+    private final Directory root;
+
+    private static class Directory {
+        final String path;
+        final List<String> fileNames = new ArrayList<String>();
+        final TreeMap<String, Directory> subdirectories = new TreeMap<String, Directory>();
+
+        Directory(String path) {
+            this.path = path;
+        }
+    }
+
+    private AssetManifestIndex(Map<String, String[]> directoryList) {
+        Map<String, Directory> directories = new HashMap<String, Directory>();
+        this.root = getOrCreateDirectory(directories, "");
+
+        for (Map.Entry<String, String[]> directoryEntry : directoryList.entrySet()) {
+            Directory directory = getOrCreateDirectory(directories, directoryEntry.getKey());
+            if (directoryEntry.getValue() == null) {
+                continue;
+            }
+
+            for (String item : directoryEntry.getValue()) {
+                // check if the item is an asset, if it is not an asset it should be present as a key in the directory list
+                if (!directoryList.containsKey(directory.path + "/" + item)) {
+                    directory.fileNames.add(item);
+                }
+            }
+        }
+    }
+
+    private static Directory getOrCreateDirectory(Map<String, Directory> directories, String path) {
+        Directory directory = directories.get(path);
+        if (directory == null) {
+            directory = new Directory(path);
+            directories.put(path, directory);
+            if (!path.isEmpty()) {
+                int separatorIndex = path.lastIndexOf('/');
+                Directory parent = getOrCreateDirectory(directories, separatorIndex == -1 ? "" : path.substring(0, separatorIndex));
+                parent.subdirectories.put(path.substring(separatorIndex + 1), directory);
+            }
+        }
+
+        return directory;
+    }
+
+    public static AssetManifestIndex getInstance(AssetManager assetManager) throws IOException, ClassNotFoundException {
+        AssetManifestIndex result = instance;
+        if (result == null) {
+            synchronized (AssetManifestIndex.class) {
+                result = instance;
+                if (result == null) {
+                    Map<String, String[]> directoryList = readAssetsIndex(assetManager);
+                    if (directoryList == null) {
+                        directoryList = readAssetsManifest(assetManager);
+                    }
+
+                    result = new AssetManifestIndex(directoryList);
+                    instance = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the assets of the given directory and of its subdirectories. Sibling directories that only share a name prefix,
+     * such as "wwwroot" for "www", are not included.
+     */
+    public List<String> getAssetsList(String path, Set<String> ignoredFiles) {
+        List<String> flatAssetPaths = new ArrayList<String>();
+        Directory directory = path.isEmpty() ? root : findDirectory(path);
+        if (directory != null) {
+            addAssets(directory, ignoredFiles, flatAssetPaths);
+        }
+
+        return flatAssetPaths;
+    }
+
+    private Directory findDirectory(String path) {
+        Directory directory = root;
+        for (String name : path.split("/", -1)) {
+            directory = directory.subdirectories.get(name);
+            if (directory == null) {
+                return null;
+            }
+        }
+
+        return directory;
+    }
+
+    private static void addAssets(Directory directory, Set<String> ignoredFiles, List<String> flatAssetPaths) {
+        for (String fileName : directory.fileNames) {
+            if (ignoredFiles == null || !ignoredFiles.contains(fileName)) {
+                flatAssetPaths.add(directory.path + "/" + fileName);
+            }
+        }
+
+        for (Directory subdirectory : directory.subdirectories.values()) {
+            addAssets(subdirectory, ignoredFiles, flatAssetPaths);
+        }
+    }
+
+    private static Map<String, String[]> readAssetsIndex(AssetManager assetManager) throws IOException {
+        DataInputStream dataInputStream;
+        try {
+            dataInputStream = new DataInputStream(new BufferedInputStream(assetManager.open(ASSETS_INDEX_FILENAME)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (dataInputStream.readInt() != ASSETS_INDEX_MAGIC || dataInputStream.readInt() != ASSETS_INDEX_VERSION) {
+                Utilities.logMessage("Unsupported assets index format, falling back to " + ASSETS_MANIFEST_FILENAME);
+                return null;
+            }
+
+            int directoryCount = dataInputStream.readInt();
+            Map<String, String[]> directoryList = new HashMap<String, String[]>(directoryCount * 2);
+            for (int i = 0; i < directoryCount; i++) {
+                String directoryPath = dataInputStream.readUTF();
+                String[] directoryContent = new String[dataInputStream.readInt()];
+                for (int j = 0; j < directoryContent.length; j++) {
+                    directoryContent[j] = dataInputStream.readUTF();
+                }
+
+                directoryList.put(directoryPath, directoryContent);
+            }
+
+            return directoryList;
+        } finally {
+            dataInputStream.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String[]> readAssetsManifest(AssetManager assetManager) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(assetManager.open(ASSETS_MANIFEST_FILENAME));
+            Map<String, String[]> directoryList = (Map<String, String[]>) ois.readObject();
+            return directoryList != null ? directoryList : Collections.<String, String[]>emptyMap();
+        } finally {
+            if (ois != null) {
+                ois.close();
+            }
+        }
+    }
+}
@@ -1,20 +1,15 @@
 package com.microsoft.cordova;
 
-import android.content.pm.PackageManager;
-import android.os.AsyncTask;
-import android.util.Base64;
-
 import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
-import com.nimbusds.jwt.SignedJWT;
 
 import org.apache.cordova.CallbackContext;
-import org.apache.cordova.ConfigXmlParser;
 import org.apache.cordova.CordovaArgs;
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
@@ -24,12 +19,8 @@ import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
-import java.security.PublicKey;
-import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Date;
 import java.util.Map;
 
@@ -41,25 +32,55 @@ public class CodePush extends CordovaPlugin {
     private static final String DEPLOYMENT_KEY_PREFERENCE = "codepushdeploymentkey";
     private static final String PUBLIC_KEY_PREFERENCE = "codepushpublickey";
     private static final String SERVER_URL_PREFERENCE = "codepushserverurl";
+    private static final String HASHING_THREAD_COUNT_PREFERENCE = "codepushhashingthreadcount";
+    private static final String DOWNLOAD_BUFFER_SIZE_PREFERENCE = "codepushdownloadbuffersize";
+    private static final String FAILED_UPDATE_CAPACITY_PREFERENCE = "codepushfailedupdatecapacity";
+    private static final long DOWNLOAD_PROGRESS_INTERVAL_MS = 100;
     private static final String WWW_ASSET_PATH_PREFIX = "file:///android_asset/www/";
-    private static final String NEW_LINE = System.getProperty("line.separator");
     private static boolean ShouldClearHistoryOnLoad = false;
+    private static boolean IonicWebViewEngineClassResolved = false;
+    private static Class IonicWebViewEngineClass;
+    private static Method IonicWebViewEngineSetServerBasePath;
     private CordovaWebView mainWebView;
     private CodePushPackageManager codePushPackageManager;
     private CodePushReportingManager codePushReportingManager;
-    private StatusReport rollbackStatusReport;
+    private CodePushBootSnapshot bootSnapshot;
+    private CodePushLifecycle codePushLifecycle;
     private boolean pluginDestroyed = false;
-    private boolean didUpdate = false;
-    private boolean didStartApp = false;
-    private long lastPausedTimeMs = 0;
+    private final UpdateHashRequests hashRequests = new UpdateHashRequests(UpdateHashRequests.DEFAULT_RESULT_LIFETIME_MS);
 
     @Override
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
-        super.initialize(cordova, webView);
-        CodePushPreferences codePushPreferences = new CodePushPreferences(cordova.getActivity());
-        codePushPackageManager = new CodePushPackageManager(cordova.getActivity(), codePushPreferences);
-        codePushReportingManager = new CodePushReportingManager(cordova.getActivity(), codePushPreferences);
-        mainWebView = webView;
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.initialize");
+        try {
+            super.initialize(cordova, webView);
+            int failedUpdateCapacity = webView.getPreferences().getInteger(FAILED_UPDATE_CAPACITY_PREFERENCE, CodePushFailedUpdateRegistry.DEFAULT_CAPACITY);
+            CodePushPreferences codePushPreferences = new CodePushPreferences(cordova.getActivity(), failedUpdateCapacity);
+            codePushPackageManager = new CodePushPackageManager(cordova.getActivity(), codePushPreferences);
+            codePushPackageManager.emptyTrashInBackground();
+            codePushReportingManager = new CodePushReportingManager(cordova.getActivity(), codePushPreferences);
+            bootSnapshot = CodePushBootSnapshot.load(cordova.getActivity(), codePushPreferences);
+            mainWebView = webView;
+            codePushLifecycle = new CodePushLifecycle(codePushPackageManager, codePushPreferences, bootSnapshot,
+                    webView.getPreferences().getString(DEPLOYMENT_KEY_PREFERENCE, null), new CodePushLifecycle.Host() {
+                @Override
+                public void navigateToCurrentPackage() {
+                    navigateToLocalDeploymentIfExists();
+                }
+
+                @Override
+                public void reloadCurrentPackage() {
+                    reloadCurrentPackageOrLaunchUrl();
+                }
+
+                @Override
+                public void reportStatus(StatusReport statusReport) {
+                    codePushReportingManager.reportStatus(statusReport, mainWebView);
+                }
+            });
+        } finally {
+            span.end();
+        }
     }
 
     @Override
@@ -96,15 +117,32 @@ public class CodePush extends CordovaPlugin {
             return execRestartApplication(args, callbackContext);
         } else if ("getPackageHash".equals(action)) {
             return execGetPackageHash(args, callbackContext);
+        } else if ("downloadPackage".equals(action)) {
+            return execDownloadPackage(args, callbackContext);
+        } else if ("installPackage".equals(action)) {
+            return execInstallPackage(args, callbackContext);
         } else if ("decodeSignature".equals(action)) {
             return execDecodeSignature(args, callbackContext);
+        } else if ("verifyPackage".equals(action)) {
+            return execVerifyPackage(args, callbackContext);
         } else if ("getPublicKey".equals(action)) {
             return execGetPublicKey(args, callbackContext);
+        } else if ("getPerformanceMetrics".equals(action)) {
+            return execGetPerformanceMetrics(callbackContext);
         } else {
             return false;
         }
     }
 
+    private boolean execGetPerformanceMetrics(CallbackContext callbackContext) {
+        try {
+            callbackContext.success(CodePushPerformanceMetrics.toJSONObject());
+        } catch (JSONException e) {
+            callbackContext.error("Could not get the performance metrics. " + e.getMessage());
+        }
+        return true;
+    }
+
     private boolean execGetPublicKey(final CordovaArgs args, final CallbackContext callbackContext) {
         String publicKey = mainWebView.getPreferences().getString(PUBLIC_KEY_PREFERENCE, null);
         callbackContext.success(publicKey);
@@ -112,95 +150,159 @@ public class CodePush extends CordovaPlugin {
     }
 
     private boolean execDecodeSignature(final CordovaArgs args, final CallbackContext callbackContext) {
-        new AsyncTask<Void, Void, Void>() {
+        CodePushExecutor.getInstance().execute(CodePushExecutor.Lane.CPU, CodePushExecutor.Priority.USER_VISIBLE, new Runnable() {
             @Override
-            protected Void doInBackground(Void... voids) {
+            public void run() {
                 try {
                     String stringPublicKey = args.getString(0);
 
-                    final PublicKey publicKey;
+                    final JWSVerifier verifier;
                     try {
-                        publicKey = parsePublicKey(stringPublicKey);
+                        verifier = CodePushSignatureVerifier.getVerifier(stringPublicKey);
                     } catch (CodePushException e) {
                         callbackContext.error("Error occurred while creating the a public key" + e.getMessage());
-                        return null;
+                        return;
                     }
 
                     final String signature = args.getString(1);
 
                     final Map<String, Object> claims;
                     try {
-                        claims = verifyAndDecodeJWT(signature, publicKey);
+                        claims = CodePushSignatureVerifier.verifyAndDecodeJWT(signature, verifier);
                     } catch (CodePushException e) {
                         callbackContext.error("The update could not be verified because it was not signed by a trusted party. " + e.getMessage());
-                        return null;
+                        return;
                     }
 
                     final String contentHash = (String) claims.get("contentHash");
                     if (contentHash == null) {
                         callbackContext.error("The update could not be verified because the signature did not specify a content hash.");
-                        return null;
+                        return;
                     }
                     callbackContext.success(contentHash);
 
                 } catch (Exception e) {
                     callbackContext.error("Unknown error occurred during signature decoding. " + e.getMessage());
                 }
+            }
+        });
+        return true;
+    }
 
-                return null;
+    private boolean execVerifyPackage(final CordovaArgs args, final CallbackContext callbackContext) {
+        final String packagePath;
+        final String packageHash;
+        try {
+            packagePath = args.getString(0);
+            packageHash = args.getString(1);
+        } catch (JSONException e) {
+            callbackContext.error("Could not read the package to verify: " + e.getMessage());
+            return true;
+        }
+
+        /* recorded by the native deployment, only used while the package folder still has the recorded fingerprint */
+        final String recordedContentHash = args.isNull(2) ? null : args.optString(2);
+        final String recordedContentFingerprint = args.isNull(3) ? null : args.optString(3);
+        final boolean isDiffUpdate = args.optBoolean(4);
+        final String publicKey = mainWebView.getPreferences().getString(PUBLIC_KEY_PREFERENCE, null);
+        CodePushExecutor.getInstance().execute(CodePushExecutor.Lane.CPU, CodePushExecutor.Priority.USER_VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.verifyPackage");
+                try {
+                    String verificationError = verifyPackage(packagePath, packageHash, recordedContentHash, recordedContentFingerprint, isDiffUpdate, publicKey);
+                    if (verificationError == null) {
+                        callbackContext.success();
+                    } else {
+                        callbackContext.error(verificationError);
+                    }
+                } finally {
+                    span.end();
+                }
             }
-        }.execute();
+        });
         return true;
     }
 
-    private PublicKey parsePublicKey(String stringPublicKey) throws CodePushException {
+    /**
+     * Runs the integrity and code signing checks of a deployed package in a single pass, following the same rules as the JavaScript layer:
+     * the signature is required if a public key is configured, and the contents are hashed if there is a signature or the update is a diff.
+     *
+     * @return null if the package passed the checks, otherwise the reason it did not
+     */
+    private String verifyPackage(String packagePath, String packageHash, String recordedContentHash, String recordedContentFingerprint, boolean isDiffUpdate, String publicKey) {
+        String signature;
+        try {
+            File signatureFile = new File(cordova.getActivity().getFilesDir(), packagePath + "/www/.codepushrelease");
+            signature = signatureFile.exists() ? Utilities.readFileContents(signatureFile).trim() : null;
+        } catch (IOException e) {
+            return "Error reading signature from update. " + e.getMessage();
+        }
+
+        boolean isSignatureVerificationEnabled = publicKey != null && !publicKey.isEmpty();
+        boolean isSignatureAppearedInBundle = signature != null && !signature.isEmpty();
+        if (isSignatureVerificationEnabled && !isSignatureAppearedInBundle) {
+            return "Error! Public key was provided but there is no JWT signature within app bundle to verify. " +
+                    "Possible reasons, why that might happen: \n" +
+                    "1. You've been released CodePush bundle update using version of CodePush CLI that is not support code signing.\n" +
+                    "2. You've been released CodePush bundle update without providing --privateKeyPath option.";
+        }
+
+        if (!isSignatureVerificationEnabled && isSignatureAppearedInBundle) {
+            Utilities.logMessage("Warning! JWT signature exists in codepush update but code integrity check couldn't be performed because there is no public key configured. " +
+                    "Please ensure that public key is properly configured within your application.");
+        }
+
+        if (!isSignatureAppearedInBundle && !isDiffUpdate) {
+            return null;
+        }
+
+        String computedHash;
         try {
-            stringPublicKey = stringPublicKey
-                    .replace("-----BEGIN PUBLIC KEY-----", "")
-                    .replace("-----END PUBLIC KEY-----", "")
-                    .replace("&#xA;", "") //gradle automatically replaces new line to &#xA;
-                    .replace(NEW_LINE, "");
-            byte[] byteKey = Base64.decode(stringPublicKey.getBytes(), Base64.DEFAULT);
-            X509EncodedKeySpec X509Key = new X509EncodedKeySpec(byteKey);
-            KeyFactory kf = KeyFactory.getInstance("RSA");
-            return kf.generatePublic(X509Key);
+            computedHash = codePushPackageManager.getPackageHash(cordova.getActivity(), packagePath, recordedContentHash, recordedContentFingerprint, getHashingThreadCount());
         } catch (Exception e) {
-            throw new CodePushException(e);
+            return "Unable to compute hash for package: " + e.getMessage();
+        }
+
+        if (!packageHash.equals(computedHash)) {
+            return "The update contents failed the data integrity check.";
+        }
+
+        Utilities.logMessage("The update contents succeeded the data integrity check.");
+        if (!isSignatureVerificationEnabled) {
+            return null;
         }
-    }
 
-    private Map<String, Object> verifyAndDecodeJWT(String jwt, PublicKey publicKey) throws CodePushException {
         try {
-            SignedJWT signedJWT = SignedJWT.parse(jwt);
-            JWSVerifier verifier = new RSASSAVerifier((RSAPublicKey) publicKey);
-            if (signedJWT.verify(verifier)) {
-                Map<String, Object> claims = signedJWT.getJWTClaimsSet().getClaims();
-                Utilities.logMessage("JWT verification succeeded, payload content: " + claims.toString());
-                return claims;
+            Map<String, Object> claims = CodePushSignatureVerifier.verifyAndDecodeJWT(signature, CodePushSignatureVerifier.getVerifier(publicKey));
+            if (!packageHash.equals(claims.get("contentHash"))) {
+                return "The update contents failed the code signing check.";
             }
-            throw new CodePushException("JWT verification failed: wrong signature");
-        } catch (Exception e) {
-            throw new CodePushException(e);
+        } catch (CodePushException e) {
+            return "Unable to verify signature for package: " + e.getMessage();
         }
+
+        Utilities.logMessage("The update contents succeeded the code signing check.");
+        return null;
     }
 
     private boolean execGetBinaryHash(final CallbackContext callbackContext) {
         String cachedBinaryHash = codePushPackageManager.getCachedBinaryHash();
         if (cachedBinaryHash == null) {
-            new AsyncTask<Void, Void, Void>() {
+            String apkPath = cordova.getActivity().getApplicationInfo().sourceDir;
+            hashRequests.request(apkPath, new UpdateHashRequests.Computation() {
                 @Override
-                protected Void doInBackground(Void... params) {
+                public String compute() throws Exception {
+                    CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.getBinaryHash");
                     try {
-                        String binaryHash = UpdateHashUtils.getBinaryHash(cordova.getActivity());
+                        String binaryHash = UpdateHashUtils.getBinaryHash(cordova.getActivity(), getHashingThreadCount());
                         codePushPackageManager.saveBinaryHash(binaryHash);
-                        callbackContext.success(binaryHash);
-                    } catch (Exception e) {
-                        callbackContext.error("An error occurred when trying to get the hash of the binary contents. " + e.getMessage());
+                        return binaryHash;
+                    } finally {
+                        span.end();
                     }
-
-                    return null;
                 }
-            }.execute();
+            }, new HashRequestCallback(callbackContext, "An error occurred when trying to get the hash of the binary contents. "));
         } else {
             callbackContext.success(cachedBinaryHash);
         }
@@ -209,50 +311,139 @@ public class CodePush extends CordovaPlugin {
     }
 
     private boolean execGetPackageHash(final CordovaArgs args, final CallbackContext callbackContext) {
-        new AsyncTask<Void, Void, Void>() {
+        final String packagePath;
+        try {
+            packagePath = args.getString(0);
+        } catch (JSONException e) {
+            callbackContext.error("Could not read the package path: " + e.getMessage());
+            return true;
+        }
+
+        hashRequests.request(packagePath, new UpdateHashRequests.Computation() {
             @Override
-            protected Void doInBackground(Void... params) {
+            public String compute() throws Exception {
+                CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.getPackageHash");
                 try {
-                    String binaryHash = UpdateHashUtils.getHashForPath(cordova.getActivity(), args.getString(0) + "/www");
-                    callbackContext.success(binaryHash);
+                    return codePushPackageManager.getPackageHash(cordova.getActivity(), packagePath, getHashingThreadCount());
+                } finally {
+                    span.end();
+                }
+            }
+        }, new HashRequestCallback(callbackContext, "An error occurred when trying to get the hash of the binary contents. "));
+        return true;
+    }
+
+    private static class HashRequestCallback implements UpdateHashRequests.Callback {
+        private final CallbackContext callbackContext;
+        private final String errorMessage;
+
+        HashRequestCallback(CallbackContext callbackContext, String errorMessage) {
+            this.callbackContext = callbackContext;
+            this.errorMessage = errorMessage;
+        }
+
+        @Override
+        public void onSuccess(String hash) {
+            callbackContext.success(hash);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            callbackContext.error(errorMessage + e.getMessage());
+        }
+    }
+
+    private boolean execDownloadPackage(final CordovaArgs args, final CallbackContext callbackContext) {
+        CodePushExecutor.getInstance().execute(CodePushExecutor.Lane.IO, CodePushExecutor.Priority.USER_VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String url = args.getString(0);
+                    File destination = new File(cordova.getActivity().getFilesDir(), args.getString(1));
+                    int bufferSize = mainWebView.getPreferences().getInteger(DOWNLOAD_BUFFER_SIZE_PREFERENCE, UpdateDownloader.DEFAULT_BUFFER_SIZE);
+                    String archiveHash = new UpdateDownloader(bufferSize).download(url, destination, new UpdateDownloader.ProgressListener() {
+                        private long lastProgressTimeMs = 0;
+
+                        @Override
+                        public void onProgress(long receivedBytes, long totalBytes) {
+                            /* throttled, to avoid flooding the bridge */
+                            long now = System.currentTimeMillis();
+                            if (now - lastProgressTimeMs >= DOWNLOAD_PROGRESS_INTERVAL_MS || receivedBytes == totalBytes) {
+                                lastProgressTimeMs = now;
+                                sendDownloadProgress(callbackContext, receivedBytes, totalBytes);
+                            }
+                        }
+                    });
+
+                    JSONObject result = new JSONObject();
+                    result.put("archiveHash", archiveHash);
+                    callbackContext.success(result);
                 } catch (Exception e) {
-                    callbackContext.error("An error occurred when trying to get the hash of the binary contents. " + e.getMessage());
+                    callbackContext.error("An error occurred while downloading the update package. " + e.getMessage());
                 }
+            }
+        });
+        return true;
+    }
 
-                return null;
+    private void sendDownloadProgress(CallbackContext callbackContext, long receivedBytes, long totalBytes) {
+        try {
+            JSONObject progress = new JSONObject();
+            progress.put("receivedBytes", receivedBytes);
+            progress.put("totalBytes", totalBytes);
+            JSONObject result = new JSONObject();
+            result.put("progress", progress);
+            PluginResult progressResult = new PluginResult(PluginResult.Status.OK, result);
+            progressResult.setKeepCallback(true);
+            callbackContext.sendPluginResult(progressResult);
+        } catch (JSONException e) {
+            Utilities.logException(e);
+        }
+    }
+
+    private boolean execInstallPackage(final CordovaArgs args, final CallbackContext callbackContext) {
+        CodePushExecutor.getInstance().execute(CodePushExecutor.Lane.IO, CodePushExecutor.Priority.USER_VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.installPackage");
+                try {
+                    CodePushPackageMetadata currentPackageMetadata = codePushPackageManager.getCurrentPackageMetadata();
+                    String currentPackagePath = currentPackageMetadata != null ? currentPackageMetadata.localPath : null;
+                    UpdatePackageInstaller.Result installResult = UpdatePackageInstaller.install(cordova.getActivity(), args.getString(0), args.getString(1),
+                            args.getString(2), currentPackagePath, getHashingThreadCount());
+                    /* the deployed package folder may have been hashed before */
+                    hashRequests.invalidate();
+
+                    JSONObject result = new JSONObject();
+                    result.put("isDiffUpdate", installResult.isDiffUpdate);
+                    result.put("contentHash", installResult.contentHash);
+                    result.put("contentFingerprint", installResult.contentFingerprint);
+                    callbackContext.success(result);
+                } catch (Exception e) {
+                    callbackContext.error("An error occurred while deploying the update package. " + e.getMessage());
+                } finally {
+                    span.end();
+                }
             }
-        }.execute();
+        });
         return true;
     }
 
+    private int getHashingThreadCount() {
+        int hashingThreadCount = mainWebView.getPreferences().getInteger(HASHING_THREAD_COUNT_PREFERENCE, 0);
+        return hashingThreadCount > 0 ? hashingThreadCount : UpdateHashUtils.getDefaultHashingThreadCount();
+    }
+
     private boolean execNotifyApplicationReady(CallbackContext callbackContext) {
-        if (this.codePushPackageManager.isBinaryFirstRun()) {
-            // Report first run of a binary version app
-            this.codePushPackageManager.saveBinaryFirstRunFlag();
-            try {
-                String appVersion = Utilities.getAppVersionName(cordova.getActivity());
-                codePushReportingManager.reportStatus(new StatusReport(ReportingStatus.STORE_VERSION, null, appVersion, mainWebView.getPreferences().getString(DEPLOYMENT_KEY_PREFERENCE, null)), this.mainWebView);
-            } catch (PackageManager.NameNotFoundException e) {
-                // Should not happen unless the appVersion is not specified, in which case we can't report anything anyway.
-                e.printStackTrace();
-            }
-        } else if (this.codePushPackageManager.installNeedsConfirmation()) {
-            // Report CodePush update installation that has not been confirmed yet
-            CodePushPackageMetadata currentMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
-            codePushReportingManager.reportStatus(new StatusReport(ReportingStatus.UPDATE_CONFIRMED, currentMetadata.label, currentMetadata.appVersion, currentMetadata.deploymentKey), this.mainWebView);
-        } else if (rollbackStatusReport != null) {
-            // Report a CodePush update that has been rolled back
-            codePushReportingManager.reportStatus(rollbackStatusReport, this.mainWebView);
-            rollbackStatusReport = null;
-        } else if (codePushReportingManager.hasFailedReport()) {
-            // Previous status report failed, so try it again
-            codePushReportingManager.reportStatus(codePushReportingManager.getAndClearFailedReport(), this.mainWebView);
-        }
-
-        // Mark the update as confirmed and not requiring a rollback
-        this.codePushPackageManager.clearInstallNeedsConfirmation();
-        this.cleanOldPackageSilently();
-        callbackContext.success();
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.notifyApplicationReady");
+        try {
+            this.codePushLifecycle.notifyApplicationReady();
+            callbackContext.success();
+        } catch (CodePushException e) {
+            callbackContext.error("Could not confirm the update: " + e.getMessage());
+        } finally {
+            span.end();
+        }
         return true;
     }
 
@@ -266,7 +457,7 @@ public class CodePush extends CordovaPlugin {
                 isFirstRun = (null != packageHash
                         && !packageHash.isEmpty()
                         && packageHash.equals(currentPackageMetadata.packageHash)
-                        && didUpdate);
+                        && codePushLifecycle.didUpdate());
             }
             callbackContext.success(isFirstRun ? 1 : 0);
         } catch (JSONException e) {
@@ -297,18 +488,24 @@ public class CodePush extends CordovaPlugin {
     }
 
     private boolean execInstall(CordovaArgs args, CallbackContext callbackContext) {
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.install");
         try {
             final String startLocation = args.getString(0);
             final InstallMode installMode = InstallMode.fromValue(args.optInt(1));
             final int minimumBackgroundDuration = args.optInt(2);
 
+            /* the new package metadata was just written by the JavaScript layer */
+            this.codePushPackageManager.invalidatePackageMetadata();
+            this.hashRequests.invalidate();
+
             File startPage = this.getStartPageForPackage(startLocation);
             if (startPage != null) {
                 /* start page file exists */
                 /* navigate to the start page */
                 if (InstallMode.IMMEDIATE.equals(installMode)) {
+                    /* the update is only loaded once it is recorded as needing a confirmation, so that a crash rolls it back */
+                    this.codePushLifecycle.markUpdate();
                     this.navigateToFile(startPage);
-                    markUpdate();
                 } else {
                     InstallOptions pendingInstall = new InstallOptions(installMode, minimumBackgroundDuration);
                     this.codePushPackageManager.savePendingInstall(pendingInstall);
@@ -318,8 +515,12 @@ public class CodePush extends CordovaPlugin {
             } else {
                 callbackContext.error("Could not find the package start page.");
             }
+        } catch (CodePushException e) {
+            callbackContext.error("Could not save the install state: " + e.getMessage());
         } catch (Exception e) {
             callbackContext.error("Cound not read webview URL: " + e.getMessage());
+        } finally {
+            span.end();
         }
         return true;
     }
@@ -327,9 +528,11 @@ public class CodePush extends CordovaPlugin {
     private boolean execReportFailed(CordovaArgs args, CallbackContext callbackContext) {
         try {
             StatusReport statusReport = StatusReport.deserialize(args.optJSONObject(0));
-            codePushReportingManager.saveFailedReport(statusReport);
+            codePushLifecycle.saveFailedReport(statusReport);
         } catch (JSONException e) {
             Utilities.logException(e);
+        } catch (CodePushException e) {
+            Utilities.logException(e);
         }
 
         return true;
@@ -338,9 +541,11 @@ public class CodePush extends CordovaPlugin {
     private boolean execReportSucceeded(CordovaArgs args, CallbackContext callbackContext) {
         try {
             StatusReport statusReport = StatusReport.deserialize(args.optJSONObject(0));
-            codePushReportingManager.saveSuccessfulReport(statusReport);
+            codePushLifecycle.saveSuccessfulReport(statusReport);
         } catch (JSONException e) {
             Utilities.logException(e);
+        } catch (CodePushException e) {
+            Utilities.logException(e);
         }
 
         return true;
@@ -352,8 +557,7 @@ public class CodePush extends CordovaPlugin {
             CodePushPackageMetadata deployedPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
             if (deployedPackageMetadata != null) {
                 callbackContext.success();
-                didStartApp = false;
-                onStart();
+                codePushLifecycle.restart(new Date().getTime());
             } else {
                 final String configLaunchUrl = this.getConfigLaunchUrl();
                 if (!this.pluginDestroyed) {
@@ -372,62 +576,23 @@ public class CodePush extends CordovaPlugin {
         return true;
     }
 
-    private void markUpdate() {
-    /* this flag will clear when reloading the plugin */
-        this.didUpdate = true;
-        this.codePushPackageManager.markInstallNeedsConfirmation();
-    }
-
-    private void cleanOldPackageSilently() {
-        try {
-            this.codePushPackageManager.cleanOldPackage();
-        } catch (Exception e) {
-            /* silently fail if there was an error during cleanup */
-            Utilities.logException(e);
-        }
-    }
-
-    private void clearDeploymentsIfBinaryUpdated() {
-        /* check if we have a deployed package already */
-        CodePushPackageMetadata deployedPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
-        if (deployedPackageMetadata != null) {
-            String deployedPackageTimeStamp = deployedPackageMetadata.nativeBuildTime;
-            long nativeBuildTime = Utilities.getApkBuildTime(this.cordova.getActivity());
-
-            String deployedPackageVersion = deployedPackageMetadata.appVersion;
-            String applicationVersion = null;
-            try {
-                applicationVersion = Utilities.getAppVersionName(this.cordova.getActivity());
-            } catch (PackageManager.NameNotFoundException e) {
-                e.printStackTrace();
-            }
-
-            if (nativeBuildTime != -1 && applicationVersion != null) {
-                String currentAppTimeStamp = String.valueOf(nativeBuildTime);
-                if (!currentAppTimeStamp.equals(deployedPackageTimeStamp) ||
-                        !(applicationVersion.equals(deployedPackageVersion))) {
-                    this.codePushPackageManager.cleanDeployments();
-                    this.codePushPackageManager.clearFailedUpdates();
-                    this.codePushPackageManager.clearPendingInstall();
-                    this.codePushPackageManager.clearInstallNeedsConfirmation();
-                    this.codePushPackageManager.clearBinaryFirstRunFlag();
-                }
-            }
-        }
-    }
-
     private void navigateToLocalDeploymentIfExists() {
-        CodePushPackageMetadata deployedPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
-        if (deployedPackageMetadata != null && deployedPackageMetadata.localPath != null) {
-            File startPage = this.getStartPageForPackage(deployedPackageMetadata.localPath);
-            if (startPage != null && this.isMainBundleActivity()) {
-                /* file exists */
-                try {
-                    navigateToFile(startPage);
-                } catch (MalformedURLException e) {
-                    /* empty - if there is an exception, the app will launch with the bundled content */
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.navigateToLocalDeploymentIfExists");
+        try {
+            CodePushPackageMetadata deployedPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
+            if (deployedPackageMetadata != null && deployedPackageMetadata.localPath != null) {
+                File startPage = this.getStartPageForPackage(deployedPackageMetadata.localPath);
+                if (startPage != null && this.isMainBundleActivity()) {
+                    /* file exists */
+                    try {
+                        navigateToFile(startPage);
+                    } catch (MalformedURLException e) {
+                        /* empty - if there is an exception, the app will launch with the bundled content */
+                    }
                 }
             }
+        } finally {
+            span.end();
         }
     }
 
@@ -455,17 +620,17 @@ public class CodePush extends CordovaPlugin {
     }
 
     private boolean execGetAppVersion(CallbackContext callbackContext) {
-        try {
-            String appVersionName = Utilities.getAppVersionName(this.cordova.getActivity());
+        String appVersionName = this.bootSnapshot.appVersion;
+        if (appVersionName != null) {
             callbackContext.success(appVersionName);
-        } catch (PackageManager.NameNotFoundException e) {
+        } else {
             callbackContext.error("Cannot get application version.");
         }
         return true;
     }
 
     private boolean execGetNativeBuildTime(CallbackContext callbackContext) {
-        long millis = Utilities.getApkBuildTime(this.cordova.getActivity());
+        long millis = this.bootSnapshot.apkBuildTime;
         if (millis == -1) {
             callbackContext.error("Could not get the application buildstamp.");
         } else {
@@ -484,37 +649,24 @@ public class CodePush extends CordovaPlugin {
         }
     }
 
-    private void handleUnconfirmedInstall(boolean navigate) {
-        if (this.codePushPackageManager.installNeedsConfirmation()) {
-            /* save status for later reporting */
-            CodePushPackageMetadata currentMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
-            rollbackStatusReport = new StatusReport(ReportingStatus.UPDATE_ROLLED_BACK, currentMetadata.label, currentMetadata.appVersion, currentMetadata.deploymentKey);
-
-            /* revert application to the previous version */
-            this.codePushPackageManager.clearInstallNeedsConfirmation();
-            this.codePushPackageManager.revertToPreviousVersion();
-
-            /* reload the previous version */
-            if (navigate) {
-                String url;
-                try {
-                    CodePushPackageMetadata currentPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
-                    url = this.getStartPageURLForPackage(currentPackageMetadata.localPath);
-                } catch (Exception e) {
-                    url = this.getConfigLaunchUrl();
-                }
+    private void reloadCurrentPackageOrLaunchUrl() {
+        String url;
+        try {
+            CodePushPackageMetadata currentPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
+            url = this.getStartPageURLForPackage(currentPackageMetadata.localPath);
+        } catch (Exception e) {
+            url = this.getConfigLaunchUrl();
+        }
 
-                final String finalURL = url;
+        final String finalURL = url;
 
-                if (!this.pluginDestroyed) {
-                    this.cordova.getActivity().runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            navigateToURL(finalURL);
-                        }
-                    });
+        if (!this.pluginDestroyed) {
+            this.cordova.getActivity().runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    navigateToURL(finalURL);
                 }
-            }
+            });
         }
     }
 
@@ -574,9 +726,7 @@ public class CodePush extends CordovaPlugin {
     }
 
     private String getConfigLaunchUrl() {
-        ConfigXmlParser parser = new ConfigXmlParser();
-        parser.parse(this.cordova.getActivity());
-        return parser.getLaunchUrl();
+        return this.bootSnapshot.launchUrl;
     }
 
     /**
@@ -586,7 +736,7 @@ public class CodePush extends CordovaPlugin {
      */
     @Override
     public void onPause(boolean multitasking) {
-        lastPausedTimeMs = new Date().getTime();
+        codePushLifecycle.onPause(new Date().getTime());
     }
 
     /**
@@ -604,51 +754,46 @@ public class CodePush extends CordovaPlugin {
      */
     @Override
     public void onStart() {
-        clearDeploymentsIfBinaryUpdated();
-        if (!didStartApp) {
-            /* The application was just started. */
-            didStartApp = true;
-            InstallOptions pendingInstall = this.codePushPackageManager.getPendingInstall();
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePush.onStart");
+        try {
+            codePushLifecycle.onStart(new Date().getTime());
+        } catch (CodePushException e) {
+            /* nothing to report to, the transition is retried on the next start */
+            Utilities.logException(e);
+        } finally {
+            span.end();
+        }
+    }
 
-            /* Revert to the previous version if the install is not confirmed and no update is pending. */
-            if (pendingInstall == null) {
-                handleUnconfirmedInstall(false);
-            }
+    private Boolean hasIonicWebViewEngine() {
+        return getIonicWebViewEngineClass() != null;
+    }
 
-            navigateToLocalDeploymentIfExists();
-            /* Handle ON_NEXT_RESUME and ON_NEXT_RESTART pending installations */
-            if (pendingInstall != null && (InstallMode.ON_NEXT_RESUME.equals(pendingInstall.installMode) || InstallMode.ON_NEXT_RESTART.equals(pendingInstall.installMode))) {
-                this.markUpdate();
-                this.codePushPackageManager.clearPendingInstall();
-            }
-        } else {
-            /* The application was resumed from the background. */
-            /* Handle ON_NEXT_RESUME pending installations. */
-            InstallOptions pendingInstall = this.codePushPackageManager.getPendingInstall();
-            long durationInBackground = (new Date().getTime() - lastPausedTimeMs) / 1000;
-            if (pendingInstall != null && InstallMode.ON_NEXT_RESUME.equals(pendingInstall.installMode) && durationInBackground >= pendingInstall.minimumBackgroundDuration) {
-                navigateToLocalDeploymentIfExists();
-                this.markUpdate();
-                this.codePushPackageManager.clearPendingInstall();
-            } else if (codePushReportingManager.hasFailedReport()) {
-                codePushReportingManager.reportStatus(codePushReportingManager.getAndClearFailedReport(), this.mainWebView);
+    /**
+     * Resolves the Ionic web view engine class once per process, or returns null if the application does not use it.
+     */
+    private static synchronized Class getIonicWebViewEngineClass() {
+        if (!IonicWebViewEngineClassResolved) {
+            try {
+                IonicWebViewEngineClass = Class.forName("com.ionicframework.cordova.webview.IonicWebViewEngine");
+                IonicWebViewEngineSetServerBasePath = IonicWebViewEngineClass.getMethod("setServerBasePath", String.class);
+            } catch (ClassNotFoundException e) {
+                IonicWebViewEngineClass = null;
+            } catch (NoSuchMethodException e) {
+                Utilities.logException(e);
             }
+
+            IonicWebViewEngineClassResolved = true;
         }
-    }
 
-    private Boolean hasIonicWebViewEngine() {
-        try {
-            Class.forName("com.ionicframework.cordova.webview.IonicWebViewEngine");
-            return true;
-        } catch (ClassNotFoundException e) {}
-        return false;
+        return IonicWebViewEngineClass;
     }
 
     private void setServerBasePath(final String serverPath) {
-        try {
-            Class ionicWebViewEngineClass = Class.forName("com.ionicframework.cordova.webview.IonicWebViewEngine");
+        Class ionicWebViewEngineClass = getIonicWebViewEngineClass();
+        final Method setServerBasePath = IonicWebViewEngineSetServerBasePath;
+        if (ionicWebViewEngineClass != null && setServerBasePath != null) {
             final Object ionicWebViewEngine = ionicWebViewEngineClass.cast(this.mainWebView.getEngine());
-            final Method setServerBasePath = ionicWebViewEngineClass.getMethod("setServerBasePath", String.class);
 
             this.cordova.getActivity().runOnUiThread(new Runnable() {
                 @Override
@@ -662,10 +807,6 @@ public class CodePush extends CordovaPlugin {
                     }
                 }
             });
-        } catch (ClassNotFoundException e) {
-            Utilities.logException(e);
-        } catch (NoSuchMethodException e) {
-            Utilities.logException(e);
         }
     }
 
@@ -675,6 +816,7 @@ public class CodePush extends CordovaPlugin {
     @Override
     public void onDestroy() {
         this.pluginDestroyed = true;
+        CodePushExecutor.getInstance().cancel(CodePushExecutor.Priority.USER_VISIBLE);
     }
 
     @Override
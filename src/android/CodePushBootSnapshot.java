@@ -0,0 +1,61 @@
+package com.microsoft.cordova;
+
+import android.app.Activity;
+import android.content.pm.PackageManager;
+
+import org.apache.cordova.ConfigXmlParser;
+
+import java.io.File;
+
+/**
+ * Values derived from the installed binary that are needed at startup: the application version, the APK build time and the launch URL.
+ * Resolving them takes a package manager lookup, a resource lookup and a config.xml parse, so they are saved with the rest of the state
+ * and only resolved again when the APK file changes.
+ */
+public class CodePushBootSnapshot {
+    public String binaryFingerprint;
+    public String appVersion;
+    public long apkBuildTime;
+    public String launchUrl;
+
+    public CodePushBootSnapshot(String binaryFingerprint, String appVersion, long apkBuildTime, String launchUrl) {
+        this.binaryFingerprint = binaryFingerprint;
+        this.appVersion = appVersion;
+        this.apkBuildTime = apkBuildTime;
+        this.launchUrl = launchUrl;
+    }
+
+    /**
+     * Returns the saved snapshot if it was taken for the installed APK, or takes and saves a new one.
+     */
+    public static CodePushBootSnapshot load(Activity activity, CodePushPreferences codePushPreferences) {
+        String binaryFingerprint = getBinaryFingerprint(activity);
+        CodePushBootSnapshot bootSnapshot = codePushPreferences.getBootSnapshot();
+        if (bootSnapshot != null && bootSnapshot.binaryFingerprint.equals(binaryFingerprint)) {
+            return bootSnapshot;
+        }
+
+        String appVersion = null;
+        try {
+            appVersion = Utilities.getAppVersionName(activity);
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+
+        ConfigXmlParser parser = new ConfigXmlParser();
+        parser.parse(activity);
+
+        bootSnapshot = new CodePushBootSnapshot(binaryFingerprint, appVersion, Utilities.getApkBuildTime(activity), parser.getLaunchUrl());
+        codePushPreferences.saveBootSnapshot(bootSnapshot);
+        return bootSnapshot;
+    }
+
+    /**
+     * The APK is replaced by every install of the binary, so its path, size and modification time identify it.
+     * Reading them only takes a stat of the file.
+     */
+    private static String getBinaryFingerprint(Activity activity) {
+        File apkFile = new File(activity.getApplicationInfo().sourceDir);
+        return apkFile.getPath() + ":" + apkFile.length() + ":" + apkFile.lastModified();
+    }
+}
@@ -0,0 +1,187 @@
+package com.microsoft.cordova;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the background work of the plugin, instead of the process-wide serial AsyncTask executor shared with the other plugins.
+ * CPU-bound and I/O-bound work run in separate lanes, so that a slow download does not delay hashing and the other way around.
+ * Within a lane, queued user-visible tasks run before background tasks, and tasks of the same priority run in submission order.
+ */
+public class CodePushExecutor {
+    private static final int CPU_LANE_THREAD_COUNT = 2;
+    private static final int IO_LANE_THREAD_COUNT = 2;
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 30;
+
+    private static CodePushExecutor instance;
+
+    public enum Lane {
+        /* hashing and signature verification */
+        CPU,
+        /* downloads, deployments and file cleanup */
+        IO
+    }
+
+    /* declared in the order they are run */
+    public enum Priority {
+        USER_VISIBLE,
+        BACKGROUND
+    }
+
+    /**
+     * A task that is told when a cancellation drops it before it ran, so that whoever waits for its result can be released.
+     */
+    public interface CancellableRunnable extends Runnable {
+        /**
+         * Called instead of run, on the thread that cancelled the task or on a lane thread.
+         */
+        void onCancelled();
+    }
+
+    private final ThreadPoolExecutor cpuLane = createLane("CodePush-cpu-", CPU_LANE_THREAD_COUNT);
+    private final ThreadPoolExecutor ioLane = createLane("CodePush-io-", IO_LANE_THREAD_COUNT);
+    private final AtomicLong submissionCount = new AtomicLong();
+    private final Set<Task> runningTasks = new HashSet<Task>();
+    /* guarded by runningTasks, a task submitted before a cancellation of its priority does not run */
+    private final long[] cancellationCounts = new long[Priority.values().length];
+
+    private class Task implements Runnable, Comparable<Task> {
+        private final Priority priority;
+        private final long submissionNumber;
+        private final Runnable runnable;
+        private final long cancellationCount;
+        private Thread thread;
+
+        Task(Priority priority, Runnable runnable) {
+            this.priority = priority;
+            this.submissionNumber = submissionCount.getAndIncrement();
+            this.runnable = runnable;
+            synchronized (runningTasks) {
+                this.cancellationCount = cancellationCounts[priority.ordinal()];
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (runningTasks) {
+                if (cancellationCount == cancellationCounts[priority.ordinal()]) {
+                    thread = Thread.currentThread();
+                    runningTasks.add(this);
+                }
+            }
+
+            if (thread == null) {
+                /* cancelled while it was queued, but not removed from the queue in time */
+                onCancelled();
+                return;
+            }
+
+            Process.setThreadPriority(priority == Priority.USER_VISIBLE ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                Utilities.logException(e);
+            } finally {
+                synchronized (runningTasks) {
+                    runningTasks.remove(this);
+                }
+
+                /* a cancellation that arrived as the task completed must not affect the next task of the thread */
+                Thread.interrupted();
+            }
+        }
+
+        void onCancelled() {
+            if (runnable instanceof CancellableRunnable) {
+                try {
+                    ((CancellableRunnable) runnable).onCancelled();
+                } catch (RuntimeException e) {
+                    Utilities.logException(e);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority.compareTo(other.priority);
+            }
+
+            return submissionNumber < other.submissionNumber ? -1 : (submissionNumber == other.submissionNumber ? 0 : 1);
+        }
+    }
+
+    public static synchronized CodePushExecutor getInstance() {
+        if (instance == null) {
+            instance = new CodePushExecutor();
+        }
+
+        return instance;
+    }
+
+    private static ThreadPoolExecutor createLane(final String threadNamePrefix, int threadCount) {
+        ThreadPoolExecutor lane = new ThreadPoolExecutor(threadCount, threadCount, IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                /* the lanes must not keep the process alive on their own */
+                Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        lane.allowCoreThreadTimeOut(true);
+        return lane;
+    }
+
+    public void execute(Lane lane, Priority priority, Runnable runnable) {
+        (lane == Lane.CPU ? cpuLane : ioLane).execute(new Task(priority, runnable));
+    }
+
+    /**
+     * Drops the queued tasks of the given priority and interrupts the running ones. Interrupted I/O fails with an exception,
+     * and the long running loops stop early. The dropped tasks that are a CancellableRunnable are told so.
+     * Tasks submitted afterwards run normally.
+     */
+    public void cancel(Priority priority) {
+        synchronized (runningTasks) {
+            cancellationCounts[priority.ordinal()]++;
+            for (Task task : runningTasks) {
+                if (task.priority == priority) {
+                    task.thread.interrupt();
+                }
+            }
+        }
+
+        List<Task> droppedTasks = new ArrayList<Task>();
+        removeQueuedTasks(cpuLane, priority, droppedTasks);
+        removeQueuedTasks(ioLane, priority, droppedTasks);
+        for (Task droppedTask : droppedTasks) {
+            droppedTask.onCancelled();
+        }
+    }
+
+    private static void removeQueuedTasks(ThreadPoolExecutor lane, Priority priority, List<Task> removedTasks) {
+        Iterator<Runnable> queuedTasks = lane.getQueue().iterator();
+        while (queuedTasks.hasNext()) {
+            Task queuedTask = (Task) queuedTasks.next();
+            if (queuedTask.priority == priority) {
+                queuedTasks.remove();
+                removedTasks.add(queuedTask);
+            }
+        }
+    }
+}
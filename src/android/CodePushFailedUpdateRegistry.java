@@ -0,0 +1,99 @@
+package com.microsoft.cordova;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Hashes of the packages that failed to install, kept in memory in the order they failed.
+ * Once the capacity is reached, the oldest hashes are evicted. The hashes are persisted as a single string,
+ * which is only written when the registry changes.
+ */
+public class CodePushFailedUpdateRegistry {
+    public static final int DEFAULT_CAPACITY = 50;
+
+    private static final String HASHES_KEY = "FAILED_UPDATES_LIST_KEY";
+    private static final String HASH_SEPARATOR = "\n";
+
+    private final CodePushStorage storage;
+    private final String group;
+    private final String legacyKey;
+    private final int capacity;
+    private LinkedHashSet<String> hashes;
+
+    /**
+     * @param storage   the storage the hashes are persisted to
+     * @param group     the group of the hashes in the storage
+     * @param legacyKey the key of the string set the hashes were previously saved as, in no particular order
+     * @param capacity  the maximum number of hashes kept
+     */
+    public CodePushFailedUpdateRegistry(CodePushStorage storage, String group, String legacyKey, int capacity) {
+        this.storage = storage;
+        this.group = group;
+        this.legacyKey = legacyKey;
+        this.capacity = Math.max(capacity, 1);
+    }
+
+    public synchronized boolean contains(String hash) {
+        return getHashes().contains(hash);
+    }
+
+    /**
+     * Adds a hash, evicting the oldest ones if the capacity is exceeded.
+     *
+     * @return the editor persisting the change, to be committed by the caller, or null if the hash was already registered
+     */
+    public synchronized CodePushStorage.Editor add(String hash) {
+        LinkedHashSet<String> hashes = getHashes();
+        if (!hashes.add(hash)) {
+            return null;
+        }
+
+        Iterator<String> oldestHashes = hashes.iterator();
+        while (hashes.size() > capacity) {
+            oldestHashes.next();
+            oldestHashes.remove();
+        }
+
+        StringBuilder savedHashes = new StringBuilder();
+        for (String registeredHash : hashes) {
+            savedHashes.append(registeredHash).append(HASH_SEPARATOR);
+        }
+
+        return storage.edit(group)
+                .putString(HASHES_KEY, savedHashes.toString())
+                .remove(legacyKey);
+    }
+
+    /**
+     * Removes all the hashes.
+     *
+     * @return the editor persisting the change, to be committed by the caller
+     */
+    public synchronized CodePushStorage.Editor clear() {
+        hashes = new LinkedHashSet<String>();
+        return storage.edit(group).clear();
+    }
+
+    private LinkedHashSet<String> getHashes() {
+        if (hashes == null) {
+            hashes = new LinkedHashSet<String>();
+            String savedHashes = storage.getString(group, HASHES_KEY, null);
+            if (savedHashes != null) {
+                for (String hash : savedHashes.split(HASH_SEPARATOR)) {
+                    if (!hash.isEmpty()) {
+                        hashes.add(hash);
+                    }
+                }
+            } else {
+                /* saved by a previous version, the set is converted by the next change */
+                Set<String> legacyHashes = storage.getStringSet(group, legacyKey, null);
+                if (legacyHashes != null) {
+                    hashes.addAll(legacyHashes);
+                }
+            }
+        }
+
+        return hashes;
+    }
+}
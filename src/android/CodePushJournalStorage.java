@@ -0,0 +1,512 @@
+package com.microsoft.cordova;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * CodePushStorage that keeps all the groups in memory and persists their changes to a single CodePushStateJournal,
+ * so that loading the state reads one small file.
+ * The changes to the durable groups are written before commit() returns. The changes committed together, even to several groups,
+ * are written as one journal record, so they are applied atomically and cost a single fsync.
+ * The changes to the other groups are visible immediately and written in the background, batched with the changes made in the meantime.
+ * Each group is migrated from the legacy storage the first time the journal is opened with it.
+ */
+public class CodePushJournalStorage implements CodePushStorage {
+    private static final int COMPACTION_THRESHOLD = 16 * 1024;
+    private static final String MIGRATION_GROUP = "CODE_PUSH_STATE_JOURNAL";
+    private static final String MIGRATED_GROUPS_KEY = "MIGRATED_GROUPS_KEY";
+
+    private static final int CHANGE_CLEAR = 0;
+    private static final int CHANGE_REMOVE = 1;
+    private static final int CHANGE_PUT_STRING = 2;
+    private static final int CHANGE_PUT_INT = 3;
+    private static final int CHANGE_PUT_BOOLEAN = 4;
+    private static final int CHANGE_PUT_STRING_SET = 5;
+
+    private static final Map<String, CodePushJournalStorage> Instances = new HashMap<String, CodePushJournalStorage>();
+
+    private final CodePushStateJournal journal;
+    private final Set<String> durableGroups;
+    private final Map<String, Map<String, Object>> groups = new HashMap<String, Map<String, Object>>();
+
+    /* serializes the journal writes, and is always acquired before the lock of the storage */
+    private final Object journalLock = new Object();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            /* the pending changes are small, and a process exit that loses them is no worse than a crash */
+            Thread thread = new Thread(runnable, "CodePush-journal-flush");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private List<Change> pendingChanges = new ArrayList<Change>();
+    private boolean isFlushScheduled = false;
+
+    private static class Change {
+        final int type;
+        final String group;
+        final String key;
+        final Object value;
+
+        Change(int type, String group, String key, Object value) {
+            this.type = type;
+            this.group = group;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Returns the storage of the given journal file, which is opened once per process. The journal keeps its length, its output stream
+     * and the state in memory, so two instances writing to the same file would lose each other's records.
+     *
+     * @param journalFile   the journal file
+     * @param groups        all the stored groups, migrated from the legacy storage when needed
+     * @param durableGroups the groups whose changes are written synchronously
+     * @param legacyStorage the storage the groups were kept in before
+     */
+    public static CodePushJournalStorage getInstance(File journalFile, Set<String> groups, Set<String> durableGroups, CodePushStorage legacyStorage) {
+        String journalPath = getJournalPath(journalFile);
+        synchronized (Instances) {
+            CodePushJournalStorage instance = Instances.get(journalPath);
+            if (instance == null) {
+                instance = new CodePushJournalStorage(journalFile, groups, durableGroups, legacyStorage);
+                Instances.put(journalPath, instance);
+            }
+
+            return instance;
+        }
+    }
+
+    /**
+     * Writes the pending changes and forgets the instance of the given journal file, so that the next getInstance() replays the journal
+     * the way a new process does. Only the simulations of a process restart need this.
+     */
+    public static void releaseInstance(File journalFile) {
+        CodePushJournalStorage instance;
+        synchronized (Instances) {
+            instance = Instances.remove(getJournalPath(journalFile));
+        }
+
+        if (instance != null) {
+            instance.flush();
+            synchronized (instance.journalLock) {
+                try {
+                    instance.journal.close();
+                } catch (IOException e) {
+                    Utilities.logException(e);
+                }
+            }
+        }
+    }
+
+    private static String getJournalPath(File journalFile) {
+        try {
+            return journalFile.getCanonicalPath();
+        } catch (IOException e) {
+            return journalFile.getAbsolutePath();
+        }
+    }
+
+    private CodePushJournalStorage(File journalFile, Set<String> groups, Set<String> durableGroups, CodePushStorage legacyStorage) {
+        this.journal = new CodePushStateJournal(journalFile);
+        this.durableGroups = durableGroups;
+
+        try {
+            for (byte[] record : journal.replay()) {
+                for (Change change : readRecord(record)) {
+                    applyChange(change);
+                }
+            }
+
+            migrateLegacyGroups(groups, legacyStorage);
+        } catch (IOException e) {
+            /* the values that could be read are kept, and the journal is rewritten by the next compaction */
+            Utilities.logException(e);
+        }
+    }
+
+    private void migrateLegacyGroups(Set<String> groups, CodePushStorage legacyStorage) throws IOException {
+        Set<String> migratedGroups = getStringSet(MIGRATION_GROUP, MIGRATED_GROUPS_KEY, new HashSet<String>());
+        Set<String> legacyGroups = new HashSet<String>(groups);
+        legacyGroups.removeAll(migratedGroups);
+        if (legacyGroups.isEmpty()) {
+            return;
+        }
+
+        for (String group : legacyGroups) {
+            for (Map.Entry<String, ?> entry : legacyStorage.getAll(group).entrySet()) {
+                Change change = createPutChange(group, entry.getKey(), entry.getValue());
+                if (change != null) {
+                    applyChange(change);
+                }
+            }
+        }
+
+        migratedGroups.addAll(legacyGroups);
+        applyChange(new Change(CHANGE_PUT_STRING_SET, MIGRATION_GROUP, MIGRATED_GROUPS_KEY, migratedGroups));
+        journal.rewrite(writeRecord(getSnapshot()));
+
+        /* only cleared once the journal has them, so that an older version of the plugin does not find stale values */
+        for (String group : legacyGroups) {
+            legacyStorage.edit(group).clear().commit();
+        }
+    }
+
+    @Override
+    public synchronized String getString(String group, String key, String defaultValue) {
+        Object value = getValue(group, key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    @Override
+    public synchronized int getInt(String group, String key, int defaultValue) {
+        Object value = getValue(group, key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String group, String key, boolean defaultValue) {
+        Object value = getValue(group, key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String group, String key, Set<String> defaultValue) {
+        Object value = getValue(group, key);
+        return value instanceof Set ? new HashSet<String>((Set<String>) value) : defaultValue;
+    }
+
+    @Override
+    public synchronized Map<String, ?> getAll(String group) {
+        Map<String, Object> values = groups.get(group);
+        return values == null ? new HashMap<String, Object>() : new HashMap<String, Object>(values);
+    }
+
+    private Object getValue(String group, String key) {
+        Map<String, Object> values = groups.get(group);
+        return values == null ? null : values.get(key);
+    }
+
+    @Override
+    public Editor edit(String group) {
+        return new JournalEditor(group);
+    }
+
+    @Override
+    public boolean commit(Editor... editors) {
+        List<Change> changes = new ArrayList<Change>();
+        for (Editor editor : editors) {
+            changes.addAll(((JournalEditor) editor).changes);
+        }
+
+        return commitChanges(changes);
+    }
+
+    private boolean commitChanges(List<Change> changes) {
+        if (changes.isEmpty()) {
+            return true;
+        }
+
+        boolean isDurable = false;
+        for (Change change : changes) {
+            isDurable |= durableGroups.contains(change.group);
+        }
+
+        if (!isDurable) {
+            synchronized (this) {
+                for (Change change : changes) {
+                    applyChange(change);
+                }
+
+                pendingChanges.addAll(changes);
+                if (!isFlushScheduled) {
+                    isFlushScheduled = true;
+                    flushExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    });
+                }
+            }
+
+            return true;
+        }
+
+        synchronized (journalLock) {
+            /* the pending changes were made first, so they are written along in the same record */
+            List<Change> recordChanges;
+            synchronized (this) {
+                recordChanges = pendingChanges;
+                pendingChanges = new ArrayList<Change>();
+            }
+
+            recordChanges.addAll(changes);
+            try {
+                journal.append(writeRecord(recordChanges));
+            } catch (IOException e) {
+                Utilities.logException(e);
+                synchronized (this) {
+                    recordChanges.removeAll(changes);
+                    recordChanges.addAll(pendingChanges);
+                    pendingChanges = recordChanges;
+                }
+
+                return false;
+            }
+
+            /* write-ahead: the durable changes are only visible once they are written */
+            synchronized (this) {
+                for (Change change : changes) {
+                    applyChange(change);
+                }
+            }
+
+            compactIfNeeded();
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the pending changes to the journal.
+     */
+    public void flush() {
+        synchronized (journalLock) {
+            List<Change> recordChanges;
+            synchronized (this) {
+                isFlushScheduled = false;
+                recordChanges = pendingChanges;
+                pendingChanges = new ArrayList<Change>();
+            }
+
+            if (recordChanges.isEmpty()) {
+                return;
+            }
+
+            try {
+                journal.append(writeRecord(recordChanges));
+            } catch (IOException e) {
+                /* the changes stay in memory, and are written by the next compaction */
+                Utilities.logException(e);
+                return;
+            }
+
+            compactIfNeeded();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (journal.length() <= COMPACTION_THRESHOLD) {
+            return;
+        }
+
+        try {
+            byte[] snapshotRecord;
+            synchronized (this) {
+                /* the snapshot includes the pending changes */
+                snapshotRecord = writeRecord(getSnapshot());
+                pendingChanges = new ArrayList<Change>();
+            }
+
+            journal.rewrite(snapshotRecord);
+        } catch (IOException e) {
+            /* the journal is still complete, compaction is retried after the next write */
+            Utilities.logException(e);
+        }
+    }
+
+
+    private void applyChange(Change change) {
+        Map<String, Object> values = groups.get(change.group);
+        if (values == null) {
+            values = new HashMap<String, Object>();
+            groups.put(change.group, values);
+        }
+
+        switch (change.type) {
+            case CHANGE_CLEAR:
+                values.clear();
+                break;
+            case CHANGE_REMOVE:
+                values.remove(change.key);
+                break;
+            default:
+                values.put(change.key, change.value);
+                break;
+        }
+    }
+
+    private List<Change> getSnapshot() {
+        List<Change> snapshot = new ArrayList<Change>();
+        for (Map.Entry<String, Map<String, Object>> group : groups.entrySet()) {
+            for (Map.Entry<String, Object> entry : group.getValue().entrySet()) {
+                snapshot.add(createPutChange(group.getKey(), entry.getKey(), entry.getValue()));
+            }
+        }
+
+        return snapshot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Change createPutChange(String group, String key, Object value) {
+        if (value instanceof String) {
+            return new Change(CHANGE_PUT_STRING, group, key, value);
+        } else if (value instanceof Integer) {
+            return new Change(CHANGE_PUT_INT, group, key, value);
+        } else if (value instanceof Boolean) {
+            return new Change(CHANGE_PUT_BOOLEAN, group, key, value);
+        } else if (value instanceof Set) {
+            return new Change(CHANGE_PUT_STRING_SET, group, key, new HashSet<String>((Set<String>) value));
+        }
+
+        /* no other type is stored by CodePushPreferences */
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static byte[] writeRecord(List<Change> changes) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeInt(changes.size());
+        for (Change change : changes) {
+            dataOutputStream.writeByte(change.type);
+            dataOutputStream.writeUTF(change.group);
+            if (change.type == CHANGE_CLEAR) {
+                continue;
+            }
+
+            dataOutputStream.writeUTF(change.key);
+            switch (change.type) {
+                case CHANGE_PUT_STRING:
+                    dataOutputStream.writeUTF((String) change.value);
+                    break;
+                case CHANGE_PUT_INT:
+                    dataOutputStream.writeInt((Integer) change.value);
+                    break;
+                case CHANGE_PUT_BOOLEAN:
+                    dataOutputStream.writeBoolean((Boolean) change.value);
+                    break;
+                case CHANGE_PUT_STRING_SET:
+                    Set<String> strings = (Set<String>) change.value;
+                    dataOutputStream.writeInt(strings.size());
+                    for (String string : strings) {
+                        dataOutputStream.writeUTF(string);
+                    }
+                    break;
+            }
+        }
+
+        dataOutputStream.flush();
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static List<Change> readRecord(byte[] record) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(record));
+        int changeCount = dataInputStream.readInt();
+        List<Change> changes = new ArrayList<Change>(changeCount);
+        for (int i = 0; i < changeCount; i++) {
+            int type = dataInputStream.readByte();
+            String group = dataInputStream.readUTF();
+            if (type == CHANGE_CLEAR) {
+                changes.add(new Change(type, group, null, null));
+                continue;
+            }
+
+            String key = dataInputStream.readUTF();
+            Object value = null;
+            switch (type) {
+                case CHANGE_PUT_STRING:
+                    value = dataInputStream.readUTF();
+                    break;
+                case CHANGE_PUT_INT:
+                    value = dataInputStream.readInt();
+                    break;
+                case CHANGE_PUT_BOOLEAN:
+                    value = dataInputStream.readBoolean();
+                    break;
+                case CHANGE_PUT_STRING_SET:
+                    int stringCount = dataInputStream.readInt();
+                    Set<String> strings = new HashSet<String>(stringCount * 2);
+                    for (int j = 0; j < stringCount; j++) {
+                        strings.add(dataInputStream.readUTF());
+                    }
+                    value = strings;
+                    break;
+            }
+
+            changes.add(new Change(type, group, key, value));
+        }
+
+        return changes;
+    }
+
+    /**
+     * Collects the changes to a group, which are applied in the order they were made.
+     */
+    private class JournalEditor implements Editor {
+        private final String group;
+        private final List<Change> changes = new ArrayList<Change>();
+
+        JournalEditor(String group) {
+            this.group = group;
+        }
+
+        @Override
+        public Editor putString(String key, String value) {
+            changes.add(value == null ? new Change(CHANGE_REMOVE, group, key, null) : new Change(CHANGE_PUT_STRING, group, key, value));
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            changes.add(new Change(CHANGE_PUT_INT, group, key, value));
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            changes.add(new Change(CHANGE_PUT_BOOLEAN, group, key, value));
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> value) {
+            changes.add(value == null ? new Change(CHANGE_REMOVE, group, key, null) : new Change(CHANGE_PUT_STRING_SET, group, key, new HashSet<String>(value)));
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            changes.add(new Change(CHANGE_REMOVE, group, key, null));
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            changes.add(new Change(CHANGE_CLEAR, group, null, null));
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return commitChanges(changes);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.microsoft.cordova;
+
+/**
+ * Decides what happens to the installed updates at each stage of the application lifecycle:
+ * applying the pending install on start or resume, rolling back an unconfirmed install, confirming it once the application is ready,
+ * and which status report is sent. The navigation and the reporting are left to the host, so that the decisions do not depend on Cordova.
+ */
+public class CodePushLifecycle {
+
+    /**
+     * Performs the actions decided by the lifecycle.
+     */
+    public interface Host {
+        /**
+         * Loads the start page of the current package, if there is one.
+         */
+        void navigateToCurrentPackage();
+
+        /**
+         * Reloads the start page of the current package, or the launch URL of the binary if there is no current package.
+         */
+        void reloadCurrentPackage();
+
+        /**
+         * Sends the status report to the JavaScript layer.
+         */
+        void reportStatus(StatusReport statusReport);
+    }
+
+    private final CodePushPackageManager codePushPackageManager;
+    private final CodePushPreferences codePushPreferences;
+    private final CodePushBootSnapshot bootSnapshot;
+    private final String deploymentKey;
+    private final Host host;
+    private StatusReport rollbackStatusReport;
+    private Boolean hasFailedReport = null;
+    private boolean didUpdate = false;
+    private boolean didStartApp = false;
+    private long lastPausedTimeMs = 0;
+
+    /**
+     * @param bootSnapshot  the version and build time of the installed binary
+     * @param deploymentKey the deployment key of the binary, used to report its first run
+     */
+    public CodePushLifecycle(CodePushPackageManager codePushPackageManager, CodePushPreferences codePushPreferences, CodePushBootSnapshot bootSnapshot,
+                             String deploymentKey, Host host) {
+        this.codePushPackageManager = codePushPackageManager;
+        this.codePushPreferences = codePushPreferences;
+        this.bootSnapshot = bootSnapshot;
+        this.deploymentKey = deploymentKey;
+        this.host = host;
+    }
+
+    /**
+     * Whether an update was installed since the plugin was loaded.
+     */
+    public boolean didUpdate() {
+        return didUpdate;
+    }
+
+    public void onPause(long timeMs) {
+        lastPausedTimeMs = timeMs;
+    }
+
+    /**
+     * Called when the activity becomes visible, on the first start of the application and on every resume from the background.
+     * Fails if the install state could not be saved, in which case the transition that needed it is not made.
+     */
+    public void onStart(long timeMs) throws CodePushException {
+        clearDeploymentsIfBinaryUpdated();
+        if (!didStartApp) {
+            /* The application was just started. */
+            didStartApp = true;
+            InstallOptions pendingInstall = this.codePushPackageManager.getPendingInstall();
+
+            /* Revert to the previous version if the install is not confirmed and no update is pending. */
+            if (pendingInstall == null) {
+                handleUnconfirmedInstall(false);
+            }
+
+            host.navigateToCurrentPackage();
+            /* Handle ON_NEXT_RESUME and ON_NEXT_RESTART pending installations */
+            if (pendingInstall != null && (InstallMode.ON_NEXT_RESUME.equals(pendingInstall.installMode) || InstallMode.ON_NEXT_RESTART.equals(pendingInstall.installMode))) {
+                this.applyPendingInstall();
+            }
+        } else {
+            /* The application was resumed from the background. */
+            /* Handle ON_NEXT_RESUME pending installations. */
+            InstallOptions pendingInstall = this.codePushPackageManager.getPendingInstall();
+            long durationInBackground = (timeMs - lastPausedTimeMs) / 1000;
+            if (pendingInstall != null && InstallMode.ON_NEXT_RESUME.equals(pendingInstall.installMode) && durationInBackground >= pendingInstall.minimumBackgroundDuration) {
+                host.navigateToCurrentPackage();
+                this.applyPendingInstall();
+            } else if (hasFailedReport()) {
+                host.reportStatus(getAndClearFailedReport());
+            }
+        }
+    }
+
+    /**
+     * Handles a restart of the application requested from JavaScript the same way as a fresh start.
+     */
+    public void restart(long timeMs) throws CodePushException {
+        didStartApp = false;
+        onStart(timeMs);
+    }
+
+    /**
+     * Reports the pending status, and confirms the current update so that it is not rolled back on the next start.
+     */
+    public void notifyApplicationReady() throws CodePushException {
+        if (this.codePushPackageManager.isBinaryFirstRun()) {
+            // Report first run of a binary version app
+            this.codePushPackageManager.saveBinaryFirstRunFlag();
+            // The appVersion is only missing if it is not specified, in which case we can't report anything anyway.
+            if (bootSnapshot.appVersion != null) {
+                host.reportStatus(new StatusReport(ReportingStatus.STORE_VERSION, null, bootSnapshot.appVersion, deploymentKey));
+            }
+        } else if (this.codePushPackageManager.installNeedsConfirmation()) {
+            // Report CodePush update installation that has not been confirmed yet
+            CodePushPackageMetadata currentMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
+            host.reportStatus(new StatusReport(ReportingStatus.UPDATE_CONFIRMED, currentMetadata.label, currentMetadata.appVersion, currentMetadata.deploymentKey));
+        } else if (rollbackStatusReport != null) {
+            // Report a CodePush update that has been rolled back
+            host.reportStatus(rollbackStatusReport);
+            rollbackStatusReport = null;
+        } else if (hasFailedReport()) {
+            // Previous status report failed, so try it again
+            host.reportStatus(getAndClearFailedReport());
+        }
+
+        // Mark the update as confirmed and not requiring a rollback
+        this.codePushPackageManager.clearInstallNeedsConfirmation();
+        this.cleanOldPackageSilently();
+    }
+
+    /**
+     * Records an update that was installed and loaded immediately, which must be confirmed before the next start.
+     */
+    public void markUpdate() throws CodePushException {
+        this.codePushPackageManager.markInstallNeedsConfirmation();
+        /* this flag will clear when reloading the plugin */
+        this.didUpdate = true;
+    }
+
+    public void saveFailedReport(StatusReport statusReport) throws CodePushException {
+        codePushPreferences.saveFailedReport(statusReport);
+        this.hasFailedReport = true;
+    }
+
+    public void saveSuccessfulReport(StatusReport statusReport) throws CodePushException {
+        if (statusReport.status == ReportingStatus.STORE_VERSION || statusReport.status == ReportingStatus.UPDATE_CONFIRMED) {
+            codePushPreferences.saveLastVersion(statusReport.label == null ? statusReport.appVersion : statusReport.label, statusReport.deploymentKey);
+            codePushPreferences.clearFailedReport();
+            this.hasFailedReport = false;
+        }
+    }
+
+    private boolean hasFailedReport() {
+        if (hasFailedReport == null) {
+            hasFailedReport = codePushPreferences.getFailedReport() != null;
+        }
+
+        return hasFailedReport;
+    }
+
+    private StatusReport getAndClearFailedReport() throws CodePushException {
+        StatusReport failedReport = codePushPreferences.getFailedReport();
+        codePushPreferences.clearFailedReport();
+        this.hasFailedReport = false;
+        return failedReport;
+    }
+
+    private void applyPendingInstall() throws CodePushException {
+        this.codePushPackageManager.applyPendingInstall();
+        /* this flag will clear when reloading the plugin */
+        this.didUpdate = true;
+    }
+
+    private void cleanOldPackageSilently() {
+        try {
+            this.codePushPackageManager.cleanOldPackage();
+        } catch (Exception e) {
+            /* silently fail if there was an error during cleanup */
+            Utilities.logException(e);
+        }
+    }
+
+    private void clearDeploymentsIfBinaryUpdated() throws CodePushException {
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePushLifecycle.clearDeploymentsIfBinaryUpdated");
+        try {
+            /* check if we have a deployed package already */
+            CodePushPackageMetadata deployedPackageMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
+            if (deployedPackageMetadata != null) {
+                String deployedPackageTimeStamp = deployedPackageMetadata.nativeBuildTime;
+                long nativeBuildTime = this.bootSnapshot.apkBuildTime;
+
+                String deployedPackageVersion = deployedPackageMetadata.appVersion;
+                String applicationVersion = this.bootSnapshot.appVersion;
+
+                if (nativeBuildTime != -1 && applicationVersion != null) {
+                    String currentAppTimeStamp = String.valueOf(nativeBuildTime);
+                    if (!currentAppTimeStamp.equals(deployedPackageTimeStamp) ||
+                            !(applicationVersion.equals(deployedPackageVersion))) {
+                        this.codePushPackageManager.cleanDeployments();
+                        this.codePushPackageManager.clearInstallState();
+                    }
+                }
+            }
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Reverts an update that was loaded but not confirmed by notifyApplicationReady, which means the application failed to start with it.
+     *
+     * @param navigate whether to reload the previous version, otherwise it is loaded by the navigation that follows
+     */
+    private void handleUnconfirmedInstall(boolean navigate) throws CodePushException {
+        CodePushPerformanceMetrics.Span span = CodePushPerformanceMetrics.begin("CodePushLifecycle.handleUnconfirmedInstall");
+        try {
+            if (this.codePushPackageManager.installNeedsConfirmation()) {
+                /* save status for later reporting */
+                CodePushPackageMetadata currentMetadata = this.codePushPackageManager.getCurrentPackageMetadata();
+                rollbackStatusReport = new StatusReport(ReportingStatus.UPDATE_ROLLED_BACK, currentMetadata.label, currentMetadata.appVersion, currentMetadata.deploymentKey);
+
+                /* revert application to the previous version */
+                this.codePushPackageManager.revertToPreviousVersion();
+
+                /* reload the previous version */
+                if (navigate) {
+                    host.reloadCurrentPackage();
+                }
+            }
+        } finally {
+            span.end();
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.microsoft.cordova;
 
+import android.app.Activity;
 import android.content.Context;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Handles update package management.
@@ -17,23 +21,45 @@ public class CodePushPackageManager {
 
     private Context context;
     private CodePushPreferences codePushPreferences;
+    private CodePushTrash codePushTrash;
+    private PackageMetadataCacheEntry currentPackageMetadataCache;
+    private PackageMetadataCacheEntry oldPackageMetadataCache;
+
+    /**
+     * Parsed package metadata file. The metadata files are also written by the JavaScript layer,
+     * so an entry is only used while the file keeps the size and modification time it was read with.
+     */
+    private static class PackageMetadataCacheEntry {
+        final CodePushPackageMetadata metadata;
+        final boolean exists;
+        final long lastModified;
+        final long length;
+
+        PackageMetadataCacheEntry(File file, CodePushPackageMetadata metadata) {
+            this.metadata = metadata;
+            this.exists = file.exists();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        boolean isValidFor(File file) {
+            return exists == file.exists() && lastModified == file.lastModified() && length == file.length();
+        }
+    }
 
     public CodePushPackageManager(Context context, CodePushPreferences codePushPreferences) {
         this.context = context;
         this.codePushPreferences = codePushPreferences;
+        this.codePushTrash = new CodePushTrash(context.getFilesDir());
     }
 
-    public void revertToPreviousVersion() {
+    public void revertToPreviousVersion() throws CodePushException {
         /* delete the failed update package */
         CodePushPackageMetadata failedUpdateMetadata = this.getCurrentPackageMetadata();
+        this.codePushPreferences.rollbackInstall(failedUpdateMetadata != null ? failedUpdateMetadata.packageHash : null);
         if (failedUpdateMetadata != null) {
-            if (failedUpdateMetadata.packageHash != null) {
-                this.codePushPreferences.saveFailedUpdate(failedUpdateMetadata.packageHash);
-            }
             File failedUpdateDir = new File(this.context.getFilesDir() + failedUpdateMetadata.localPath);
-            if (failedUpdateDir.exists()) {
-                Utilities.deleteEntryRecursively(failedUpdateDir);
-            }
+            this.codePushTrash.moveToTrash(failedUpdateDir);
         }
 
         /* replace the current file with the old one */
@@ -47,33 +73,136 @@ public class CodePushPackageManager {
         if (oldFile.exists()) {
             oldFile.renameTo(currentFile);
         }
+
+        this.invalidatePackageMetadata();
+
+        this.codePushTrash.emptyInBackground();
     }
 
     public void cleanDeployments() {
-        File file = new File(this.context.getFilesDir() + "/codepush");
-        if (file.exists()) {
-            Utilities.deleteEntryRecursively(file);
-        }
+        this.codePushTrash.moveAllToTrash();
+        this.invalidatePackageMetadata();
+        this.codePushTrash.emptyInBackground();
     }
 
     public void cleanOldPackage() throws IOException, JSONException {
         CodePushPackageMetadata oldPackageMetadata = this.getOldPackageMetadata();
         if (oldPackageMetadata != null) {
             File file = new File(this.context.getFilesDir() + oldPackageMetadata.localPath);
-            if (file.exists()) {
-                Utilities.deleteEntryRecursively(file);
+            this.codePushTrash.moveToTrash(file);
+            this.codePushTrash.emptyInBackground();
+        }
+    }
+
+    /**
+     * Deletes the package folders left in the trash by a previous run.
+     */
+    public void emptyTrashInBackground() {
+        this.codePushTrash.emptyInBackground();
+    }
+
+    /**
+     * Returns the hash of the www folder of the given package.
+     *
+     * @param packagePath the package folder, relative to the files directory
+     */
+    public String getPackageHash(Activity activity, String packagePath, int hashingThreadCount) throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
+        return getPackageHash(activity, packagePath, null, null, hashingThreadCount);
+    }
+
+    /**
+     * Returns the hash of the www folder of the given package. A hash recorded for the package is returned instead of hashing the folder,
+     * as long as the fingerprint recorded with it still matches the folder: the hash recorded by the deployment is given by the caller,
+     * and the hash of the current package is recorded in its metadata. Taking the fingerprint still stats every file of the folder,
+     * but none of them is read.
+     *
+     * @param packagePath                the package folder, relative to the files directory
+     * @param recordedContentHash        the hash recorded when the package was deployed, or null
+     * @param recordedContentFingerprint the fingerprint of the folder recorded with that hash, or null
+     */
+    public String getPackageHash(Activity activity, String packagePath, String recordedContentHash, String recordedContentFingerprint, int hashingThreadCount)
+            throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
+        CodePushPackageMetadata currentPackageMetadata = this.getCurrentPackageMetadata();
+        boolean isCurrentPackage = currentPackageMetadata != null && packagePath.equals(currentPackageMetadata.localPath);
+
+        /* taken before hashing, so that a change made while hashing invalidates the recorded hash */
+        String contentFingerprint = UpdateHashUtils.getFolderFingerprint(new File(this.context.getFilesDir() + packagePath + "/www"));
+        if (recordedContentHash != null && contentFingerprint.equals(recordedContentFingerprint)) {
+            return recordedContentHash;
+        }
+
+        if (isCurrentPackage && currentPackageMetadata.contentHash != null && contentFingerprint.equals(currentPackageMetadata.contentFingerprint)) {
+            return currentPackageMetadata.contentHash;
+        }
+
+        String contentHash = UpdateHashUtils.getHashForPath(activity, packagePath + "/www", hashingThreadCount);
+        if (isCurrentPackage) {
+            try {
+                this.saveCurrentPackageContentHash(contentHash, contentFingerprint);
+            } catch (Exception e) {
+                /* the hash is recomputed next time */
+                Utilities.logException(e);
             }
         }
+
+        return contentHash;
     }
 
-    public CodePushPackageMetadata getOldPackageMetadata() {
-        String currentPackageFilePath = this.context.getFilesDir() + CODEPUSH_OLD_PACKAGE_PATH;
-        return CodePushPackageMetadata.getPackageMetadata(currentPackageFilePath);
+    private synchronized void saveCurrentPackageContentHash(String contentHash, String contentFingerprint) throws IOException, JSONException {
+        CodePushPackageMetadata currentPackageMetadata = this.getCurrentPackageMetadata();
+        if (currentPackageMetadata == null) {
+            return;
+        }
+
+        File currentFile = new File(this.context.getFilesDir() + CodePushPackageManager.CODEPUSH_CURRENT_PACKAGE_PATH);
+        JSONObject currentPackage = new JSONObject(Utilities.readFileContents(currentFile));
+        currentPackage.put(CodePushPackageMetadata.JsonField.ContentHash, contentHash);
+        currentPackage.put(CodePushPackageMetadata.JsonField.ContentFingerprint, contentFingerprint);
+
+        /* written aside and renamed, so that the metadata is never left half written */
+        File temporaryFile = new File(currentFile.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(temporaryFile);
+        try {
+            outputStream.write(currentPackage.toString().getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+
+        if (!temporaryFile.renameTo(currentFile)) {
+            temporaryFile.delete();
+            throw new IOException("Could not update " + currentFile.getPath());
+        }
+
+        /* write-through, so that the file is not parsed again */
+        currentPackageMetadata.contentHash = contentHash;
+        currentPackageMetadata.contentFingerprint = contentFingerprint;
+        this.currentPackageMetadataCache = new PackageMetadataCacheEntry(currentFile, currentPackageMetadata);
     }
 
-    public CodePushPackageMetadata getCurrentPackageMetadata() {
-        String currentPackageFilePath = this.context.getFilesDir() + CODEPUSH_CURRENT_PACKAGE_PATH;
-        return CodePushPackageMetadata.getPackageMetadata(currentPackageFilePath);
+    public synchronized CodePushPackageMetadata getOldPackageMetadata() {
+        File oldPackageFile = new File(this.context.getFilesDir() + CODEPUSH_OLD_PACKAGE_PATH);
+        if (this.oldPackageMetadataCache == null || !this.oldPackageMetadataCache.isValidFor(oldPackageFile)) {
+            this.oldPackageMetadataCache = new PackageMetadataCacheEntry(oldPackageFile, CodePushPackageMetadata.getPackageMetadata(oldPackageFile.getPath()));
+        }
+
+        return this.oldPackageMetadataCache.metadata;
+    }
+
+    public synchronized CodePushPackageMetadata getCurrentPackageMetadata() {
+        File currentPackageFile = new File(this.context.getFilesDir() + CODEPUSH_CURRENT_PACKAGE_PATH);
+        if (this.currentPackageMetadataCache == null || !this.currentPackageMetadataCache.isValidFor(currentPackageFile)) {
+            this.currentPackageMetadataCache = new PackageMetadataCacheEntry(currentPackageFile, CodePushPackageMetadata.getPackageMetadata(currentPackageFile.getPath()));
+        }
+
+        return this.currentPackageMetadataCache.metadata;
+    }
+
+    /**
+     * Drops the parsed package metadata, after the metadata files were changed.
+     */
+    public synchronized void invalidatePackageMetadata() {
+        this.currentPackageMetadataCache = null;
+        this.oldPackageMetadataCache = null;
     }
 
     public String getCachedBinaryHash() {
@@ -88,11 +217,11 @@ public class CodePushPackageManager {
         return this.codePushPreferences.isFailedUpdate(packageHash);
     }
 
-    public void clearFailedUpdates() {
-        this.codePushPreferences.clearFailedUpdates();
+    public void clearInstallState() throws CodePushException {
+        this.codePushPreferences.clearInstallState();
     }
 
-    public void savePendingInstall(InstallOptions options) {
+    public void savePendingInstall(InstallOptions options) throws CodePushException {
         this.codePushPreferences.savePendingInstall(options);
     }
 
@@ -100,15 +229,19 @@ public class CodePushPackageManager {
         return this.codePushPreferences.getPendingInstall();
     }
 
-    public void clearPendingInstall() {
+    public void clearPendingInstall() throws CodePushException {
         this.codePushPreferences.clearPendingInstall();
     }
 
-    public void markInstallNeedsConfirmation() {
+    public void markInstallNeedsConfirmation() throws CodePushException {
         this.codePushPreferences.markInstallNeedsConfirmation();
     }
 
-    public void clearInstallNeedsConfirmation() {
+    public void applyPendingInstall() throws CodePushException {
+        this.codePushPreferences.applyPendingInstall();
+    }
+
+    public void clearInstallNeedsConfirmation() throws CodePushException {
         this.codePushPreferences.clearInstallNeedsConfirmation();
     }
 
@@ -120,11 +253,11 @@ public class CodePushPackageManager {
         return this.codePushPreferences.isBinaryFirstRun();
     }
 
-    public void clearBinaryFirstRunFlag() {
+    public void clearBinaryFirstRunFlag() throws CodePushException {
         this.codePushPreferences.clearBinaryFirstRunFlag();
     }
 
-    public void saveBinaryFirstRunFlag() {
+    public void saveBinaryFirstRunFlag() throws CodePushException {
         this.codePushPreferences.saveBinaryFirstRunFlag();
     }
 }
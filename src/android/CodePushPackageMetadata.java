@@ -17,6 +17,8 @@ public class CodePushPackageMetadata {
     public long packageSize;
     public String nativeBuildTime;
     public String localPath;
+    public String contentHash;
+    public String contentFingerprint;
 
     final static class JsonField {
         public static final String DeploymentKey = "deploymentKey";
@@ -28,6 +30,8 @@ public class CodePushPackageMetadata {
         public static final String PackageSize = "packageSize";
         public static final String NativeBuildTime = "nativeBuildTime";
         public static final String LocalPath = "localPath";
+        public static final String ContentHash = "contentHash";
+        public static final String ContentFingerprint = "contentFingerprint";
     }
 
     public static CodePushPackageMetadata getPackageMetadata(String filePath) {
@@ -75,6 +79,14 @@ public class CodePushPackageMetadata {
                 if (jsonObject.has(CodePushPackageMetadata.JsonField.LocalPath)) {
                     result.localPath = jsonObject.getString(CodePushPackageMetadata.JsonField.LocalPath);
                 }
+
+                if (jsonObject.has(CodePushPackageMetadata.JsonField.ContentHash)) {
+                    result.contentHash = jsonObject.getString(CodePushPackageMetadata.JsonField.ContentHash);
+                }
+
+                if (jsonObject.has(CodePushPackageMetadata.JsonField.ContentFingerprint)) {
+                    result.contentFingerprint = jsonObject.getString(CodePushPackageMetadata.JsonField.ContentFingerprint);
+                }
             }
         } catch (Exception e) {
             Utilities.logException(e);
@@ -0,0 +1,97 @@
+package com.microsoft.cordova;
+
+import android.os.Build;
+import android.os.Trace;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named timing spans around the plugin lifecycle stages. Each span is emitted as an android.os.Trace section,
+ * so it shows up in system traces, and its durations are aggregated per name for getPerformanceMetrics.
+ * A span must be ended on the thread that began it.
+ */
+public class CodePushPerformanceMetrics {
+    private static final Map<String, SpanMetrics> SPAN_METRICS = new LinkedHashMap<String, SpanMetrics>();
+
+    private static class SpanMetrics {
+        int count;
+        long totalNanos;
+        long lastNanos;
+        long maxNanos;
+    }
+
+    public static class Span {
+        private final String name;
+        private final long startNanos;
+        private boolean isEnded = false;
+
+        private Span(String name) {
+            this.name = name;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.beginSection(name);
+            }
+
+            this.startNanos = System.nanoTime();
+        }
+
+        public void end() {
+            if (isEnded) {
+                return;
+            }
+
+            isEnded = true;
+            long durationNanos = System.nanoTime() - startNanos;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                Trace.endSection();
+            }
+
+            record(name, durationNanos);
+        }
+    }
+
+    /**
+     * Begins a span, which is ended by calling end() in a finally block.
+     */
+    public static Span begin(String name) {
+        return new Span(name);
+    }
+
+    private static synchronized void record(String name, long durationNanos) {
+        SpanMetrics spanMetrics = SPAN_METRICS.get(name);
+        if (spanMetrics == null) {
+            spanMetrics = new SpanMetrics();
+            SPAN_METRICS.put(name, spanMetrics);
+        }
+
+        spanMetrics.count++;
+        spanMetrics.totalNanos += durationNanos;
+        spanMetrics.lastNanos = durationNanos;
+        spanMetrics.maxNanos = Math.max(spanMetrics.maxNanos, durationNanos);
+    }
+
+    /**
+     * Returns the metrics of every span recorded in this process, keyed by span name, with durations in milliseconds.
+     */
+    public static synchronized JSONObject toJSONObject() throws JSONException {
+        JSONObject result = new JSONObject();
+        for (Map.Entry<String, SpanMetrics> entry : SPAN_METRICS.entrySet()) {
+            SpanMetrics spanMetrics = entry.getValue();
+            JSONObject spanResult = new JSONObject();
+            spanResult.put("count", spanMetrics.count);
+            spanResult.put("totalMs", toMillis(spanMetrics.totalNanos));
+            spanResult.put("lastMs", toMillis(spanMetrics.lastNanos));
+            spanResult.put("maxMs", toMillis(spanMetrics.maxNanos));
+            result.put(entry.getKey(), spanResult);
+        }
+
+        return result;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
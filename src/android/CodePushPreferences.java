@@ -1,10 +1,11 @@
 package com.microsoft.cordova;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import org.json.JSONException;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -29,36 +30,68 @@ public class CodePushPreferences {
     private static final String LAST_VERSION_PREFERENCE = "CODE_PUSH_LAST_VERSION";
     private static final String LAST_VERSION_DEPLOYMENT_KEY_KEY = "LAST_VERSION_DEPLOYMENT_KEY_KEY";
     private static final String LAST_VERSION_LABEL_OR_APP_VERSION_KEY = "LAST_VERSION_LABEL_OR_APP_VERSION_KEY";
+    private static final String BOOT_SNAPSHOT_PREFERENCE = "CODE_PUSH_BOOT_SNAPSHOT";
+    private static final String BOOT_SNAPSHOT_BINARY_FINGERPRINT_KEY = "BOOT_SNAPSHOT_BINARY_FINGERPRINT_KEY";
+    private static final String BOOT_SNAPSHOT_APP_VERSION_KEY = "BOOT_SNAPSHOT_APP_VERSION_KEY";
+    private static final String BOOT_SNAPSHOT_APK_BUILD_TIME_KEY = "BOOT_SNAPSHOT_APK_BUILD_TIME_KEY";
+    private static final String BOOT_SNAPSHOT_LAUNCH_URL_KEY = "BOOT_SNAPSHOT_LAUNCH_URL_KEY";
+    private static final String STATE_JOURNAL_FILE_NAME = "codepushstate.journal";
+
+    private static final Set<String> PREFERENCES = new HashSet<String>(Arrays.asList(BINARY_HASH_PREFERENCE, FAILED_UPDATES_PREFERENCE,
+            PENDING_INSTALL_PREFERENCE, INSTALL_NEEDS_CONFIRMATION, FAILED_STATUS_REPORT_PREFERENCE, FIRST_RUN_PREFERENCE, LAST_VERSION_PREFERENCE,
+            BOOT_SNAPSHOT_PREFERENCE));
+
+    /* the install lifecycle state, whose transitions must survive crashes as a whole, and the status report that a crash must not lose */
+    private static final Set<String> DURABLE_PREFERENCES = new HashSet<String>(Arrays.asList(FAILED_UPDATES_PREFERENCE, PENDING_INSTALL_PREFERENCE,
+            INSTALL_NEEDS_CONFIRMATION, FIRST_RUN_PREFERENCE, FAILED_STATUS_REPORT_PREFERENCE));
+
+    private CodePushStorage storage;
+    private CodePushFailedUpdateRegistry failedUpdates;
+
+    /**
+     * @param failedUpdateCapacity the maximum number of failed update hashes remembered
+     */
+    public CodePushPreferences(Context context, int failedUpdateCapacity) {
+        this(getJournalStorage(context.getFilesDir(), new CodePushSharedPreferencesStorage(context)), failedUpdateCapacity);
+    }
+
+    public CodePushPreferences(CodePushStorage storage, int failedUpdateCapacity) {
+        this.storage = storage;
+        this.failedUpdates = new CodePushFailedUpdateRegistry(storage, CodePushPreferences.FAILED_UPDATES_PREFERENCE, CodePushPreferences.FAILED_UPDATES_KEY,
+                failedUpdateCapacity);
+    }
 
-    private Context context;
+    /**
+     * Returns the storage of the preferences, a state journal in the given directory shared by the whole process.
+     *
+     * @param legacyStorage the storage the preferences are migrated from, the first time the journal is opened
+     */
+    public static CodePushJournalStorage getJournalStorage(File filesDir, CodePushStorage legacyStorage) {
+        return CodePushJournalStorage.getInstance(new File(filesDir, STATE_JOURNAL_FILE_NAME), PREFERENCES, DURABLE_PREFERENCES, legacyStorage);
+    }
 
-    public CodePushPreferences(Context context) {
-        this.context = context;
+    /**
+     * Closes the storage of the preferences of the given directory, as the end of the process would.
+     */
+    public static void releaseJournalStorage(File filesDir) {
+        CodePushJournalStorage.releaseInstance(new File(filesDir, STATE_JOURNAL_FILE_NAME));
     }
 
     public String getCachedBinaryHash() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.BINARY_HASH_PREFERENCE, Context.MODE_PRIVATE);
-        return preferences.getString(CodePushPreferences.BINARY_HASH_PREFERENCE_KEY, null);
+        return storage.getString(CodePushPreferences.BINARY_HASH_PREFERENCE, CodePushPreferences.BINARY_HASH_PREFERENCE_KEY, null);
     }
 
     public void saveBinaryHash(String binaryHash) {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.BINARY_HASH_PREFERENCE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.BINARY_HASH_PREFERENCE);
         editor.putString(CodePushPreferences.BINARY_HASH_PREFERENCE_KEY, binaryHash);
         editor.commit();
     }
 
-    public void saveFailedUpdate(String hashCode) {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FAILED_UPDATES_PREFERENCE, Context.MODE_PRIVATE);
-        Set<String> failedUpdatesSet = preferences.getStringSet(CodePushPreferences.FAILED_UPDATES_KEY, null);
-        if (failedUpdatesSet == null) {
-            failedUpdatesSet = new HashSet<String>();
+    public void saveFailedUpdate(String hashCode) throws CodePushException {
+        CodePushStorage.Editor editor = this.failedUpdates.add(hashCode);
+        if (editor != null) {
+            commitInstallState(editor);
         }
-
-        failedUpdatesSet.add(hashCode);
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putStringSet(CodePushPreferences.FAILED_UPDATES_KEY, failedUpdatesSet);
-        editor.commit();
     }
 
     public boolean isFailedUpdate(String hashCode) {
@@ -66,33 +99,29 @@ public class CodePushPreferences {
             return false;
         }
 
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FAILED_UPDATES_PREFERENCE, Context.MODE_PRIVATE);
-        Set<String> failedUpdatesSet = preferences.getStringSet(CodePushPreferences.FAILED_UPDATES_KEY, null);
-        return (failedUpdatesSet != null && failedUpdatesSet.contains(hashCode));
+        return this.failedUpdates.contains(hashCode);
     }
 
-    public void clearFailedUpdates() {
-        this.clearPreferences(CodePushPreferences.FAILED_UPDATES_PREFERENCE);
+    public void clearFailedUpdates() throws CodePushException {
+        commitInstallState(this.failedUpdates.clear());
     }
 
-    public void savePendingInstall(InstallOptions installOptions) {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.PENDING_INSTALL_PREFERENCE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+    public void savePendingInstall(InstallOptions installOptions) throws CodePushException {
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.PENDING_INSTALL_PREFERENCE);
         editor.putInt(CodePushPreferences.INSTALL_MODE_KEY, installOptions.installMode.getValue());
         editor.putInt(CodePushPreferences.INSTALL_MIN_BACKGROUND_DURATION, installOptions.minimumBackgroundDuration);
-        editor.commit();
+        commitInstallState(editor);
     }
 
-    public void clearPendingInstall() {
+    public void clearPendingInstall() throws CodePushException {
         this.clearPreferences(CodePushPreferences.PENDING_INSTALL_PREFERENCE);
     }
 
     public InstallOptions getPendingInstall() {
         InstallOptions pendingInstall = null;
 
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.PENDING_INSTALL_PREFERENCE, Context.MODE_PRIVATE);
-        int installMode = preferences.getInt(CodePushPreferences.INSTALL_MODE_KEY, -1);
-        int minimumBackgroundDuration = preferences.getInt(CodePushPreferences.INSTALL_MIN_BACKGROUND_DURATION, -1);
+        int installMode = storage.getInt(CodePushPreferences.PENDING_INSTALL_PREFERENCE, CodePushPreferences.INSTALL_MODE_KEY, -1);
+        int minimumBackgroundDuration = storage.getInt(CodePushPreferences.PENDING_INSTALL_PREFERENCE, CodePushPreferences.INSTALL_MIN_BACKGROUND_DURATION, -1);
 
         if (installMode != -1 && minimumBackgroundDuration != -1) {
             pendingInstall = new InstallOptions(InstallMode.fromValue(installMode), minimumBackgroundDuration);
@@ -101,57 +130,85 @@ public class CodePushPreferences {
         return pendingInstall;
     }
 
-    public void markInstallNeedsConfirmation() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+    public void markInstallNeedsConfirmation() throws CodePushException {
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION);
         editor.putBoolean(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION_KEY, true);
-        editor.commit();
+        commitInstallState(editor);
     }
 
-    public void clearInstallNeedsConfirmation() {
+    public void clearInstallNeedsConfirmation() throws CodePushException {
         this.clearPreferences(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION);
     }
 
     public boolean installNeedsConfirmation() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION, Context.MODE_PRIVATE);
-        boolean notConfirmedInstall = preferences.getBoolean(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION_KEY, false);
+        boolean notConfirmedInstall = storage.getBoolean(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION, CodePushPreferences.INSTALL_NEEDS_CONFIRMATION_KEY, false);
         return notConfirmedInstall;
     }
 
-    public void clearBinaryFirstRunFlag() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FIRST_RUN_PREFERENCE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+    /**
+     * Marks the pending install as applied: it now needs to be confirmed.
+     */
+    public void applyPendingInstall() throws CodePushException {
+        commitInstallState(
+                storage.edit(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION).putBoolean(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION_KEY, true),
+                storage.edit(CodePushPreferences.PENDING_INSTALL_PREFERENCE).clear());
+    }
+
+    /**
+     * Records the rollback of an install that was not confirmed.
+     *
+     * @param failedPackageHash the hash of the rolled back package, or null if it is unknown
+     */
+    public void rollbackInstall(String failedPackageHash) throws CodePushException {
+        CodePushStorage.Editor confirmationEditor = storage.edit(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION).clear();
+        CodePushStorage.Editor failedUpdatesEditor = failedPackageHash != null ? this.failedUpdates.add(failedPackageHash) : null;
+        if (failedUpdatesEditor == null) {
+            commitInstallState(confirmationEditor);
+        } else {
+            commitInstallState(confirmationEditor, failedUpdatesEditor);
+        }
+    }
+
+    /**
+     * Forgets the install state of the updates made for a previous binary version.
+     */
+    public void clearInstallState() throws CodePushException {
+        commitInstallState(
+                this.failedUpdates.clear(),
+                storage.edit(CodePushPreferences.PENDING_INSTALL_PREFERENCE).clear(),
+                storage.edit(CodePushPreferences.INSTALL_NEEDS_CONFIRMATION).clear(),
+                storage.edit(CodePushPreferences.FIRST_RUN_PREFERENCE).remove(CodePushPreferences.FIRST_RUN_PREFERENCE_KEY));
+    }
+
+    public void clearBinaryFirstRunFlag() throws CodePushException {
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.FIRST_RUN_PREFERENCE);
         editor.remove(CodePushPreferences.FIRST_RUN_PREFERENCE_KEY);
-        editor.commit();
+        commitInstallState(editor);
     }
 
-    public void saveBinaryFirstRunFlag() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FIRST_RUN_PREFERENCE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+    public void saveBinaryFirstRunFlag() throws CodePushException {
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.FIRST_RUN_PREFERENCE);
         editor.putBoolean(CodePushPreferences.FIRST_RUN_PREFERENCE_KEY, false);
-        editor.commit();
+        commitInstallState(editor);
     }
 
     public boolean isBinaryFirstRun() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FIRST_RUN_PREFERENCE, Context.MODE_PRIVATE);
-        boolean isFirstRun = preferences.getBoolean(CodePushPreferences.FIRST_RUN_PREFERENCE_KEY, true);
+        boolean isFirstRun = storage.getBoolean(CodePushPreferences.FIRST_RUN_PREFERENCE, CodePushPreferences.FIRST_RUN_PREFERENCE_KEY, true);
         return isFirstRun;
     }
 
-    public void clearPreferences(String preferencesId) {
-        SharedPreferences preferences = context.getSharedPreferences(preferencesId, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+    public void clearPreferences(String preferencesId) throws CodePushException {
+        CodePushStorage.Editor editor = storage.edit(preferencesId);
         editor.clear();
-        editor.commit();
+        commitInstallState(editor);
     }
 
-    public void clearFailedReport() {
+    public void clearFailedReport() throws CodePushException {
         this.clearPreferences(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE);
     }
 
     public StatusReport getFailedReport() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE, Context.MODE_PRIVATE);
-        String statusReportJson = preferences.getString(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE_KEY, null);
+        String statusReportJson = storage.getString(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE, CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE_KEY, null);
         try {
             return statusReportJson == null ? null : StatusReport.deserialize(statusReportJson);
         } catch (JSONException e) {
@@ -161,28 +218,56 @@ public class CodePushPreferences {
         }
     }
 
-    public void saveFailedReport(StatusReport statusReport) {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+    public void saveFailedReport(StatusReport statusReport) throws CodePushException {
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE);
         editor.putString(CodePushPreferences.FAILED_STATUS_REPORT_PREFERENCE_KEY, statusReport.serialize());
-        editor.commit();
+        commitInstallState(editor);
     }
 
     public void saveLastVersion(String labelOrAppVersion, String deploymentKey) {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.LAST_VERSION_PREFERENCE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = preferences.edit();
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.LAST_VERSION_PREFERENCE);
         editor.putString(CodePushPreferences.LAST_VERSION_LABEL_OR_APP_VERSION_KEY, labelOrAppVersion);
         editor.putString(CodePushPreferences.LAST_VERSION_DEPLOYMENT_KEY_KEY, deploymentKey);
         editor.commit();
     }
 
     public String getLastVersionDeploymentKey() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.LAST_VERSION_PREFERENCE, Context.MODE_PRIVATE);
-        return preferences.getString(CodePushPreferences.LAST_VERSION_DEPLOYMENT_KEY_KEY, null);
+        return storage.getString(CodePushPreferences.LAST_VERSION_PREFERENCE, CodePushPreferences.LAST_VERSION_DEPLOYMENT_KEY_KEY, null);
     }
 
     public String getLastVersionLabelOrAppVersion() {
-        SharedPreferences preferences = context.getSharedPreferences(CodePushPreferences.LAST_VERSION_PREFERENCE, Context.MODE_PRIVATE);
-        return preferences.getString(CodePushPreferences.LAST_VERSION_LABEL_OR_APP_VERSION_KEY, null);
+        return storage.getString(CodePushPreferences.LAST_VERSION_PREFERENCE, CodePushPreferences.LAST_VERSION_LABEL_OR_APP_VERSION_KEY, null);
+    }
+
+    public CodePushBootSnapshot getBootSnapshot() {
+        String binaryFingerprint = storage.getString(CodePushPreferences.BOOT_SNAPSHOT_PREFERENCE, CodePushPreferences.BOOT_SNAPSHOT_BINARY_FINGERPRINT_KEY, null);
+        if (binaryFingerprint == null) {
+            return null;
+        }
+
+        return new CodePushBootSnapshot(binaryFingerprint,
+                storage.getString(CodePushPreferences.BOOT_SNAPSHOT_PREFERENCE, CodePushPreferences.BOOT_SNAPSHOT_APP_VERSION_KEY, null),
+                Long.parseLong(storage.getString(CodePushPreferences.BOOT_SNAPSHOT_PREFERENCE, CodePushPreferences.BOOT_SNAPSHOT_APK_BUILD_TIME_KEY, "-1")),
+                storage.getString(CodePushPreferences.BOOT_SNAPSHOT_PREFERENCE, CodePushPreferences.BOOT_SNAPSHOT_LAUNCH_URL_KEY, null));
+    }
+
+    public void saveBootSnapshot(CodePushBootSnapshot bootSnapshot) {
+        CodePushStorage.Editor editor = storage.edit(CodePushPreferences.BOOT_SNAPSHOT_PREFERENCE);
+        editor.clear();
+        editor.putString(CodePushPreferences.BOOT_SNAPSHOT_BINARY_FINGERPRINT_KEY, bootSnapshot.binaryFingerprint);
+        editor.putString(CodePushPreferences.BOOT_SNAPSHOT_APP_VERSION_KEY, bootSnapshot.appVersion);
+        editor.putString(CodePushPreferences.BOOT_SNAPSHOT_APK_BUILD_TIME_KEY, String.valueOf(bootSnapshot.apkBuildTime));
+        editor.putString(CodePushPreferences.BOOT_SNAPSHOT_LAUNCH_URL_KEY, bootSnapshot.launchUrl);
+        editor.commit();
+    }
+
+    /**
+     * Commits changes to the durable preferences, which are written before this returns. A change that could not be written
+     * is not applied either, and the install, confirmation or rollback that made it must not go on as if it was.
+     */
+    private void commitInstallState(CodePushStorage.Editor... editors) throws CodePushException {
+        if (!storage.commit(editors)) {
+            throw new CodePushException("Could not save the CodePush install state.");
+        }
     }
 }
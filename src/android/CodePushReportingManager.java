@@ -12,7 +12,6 @@ public class CodePushReportingManager {
 
     private Activity cordovaActivity;
     private CodePushPreferences codePushPreferences;
-    private Boolean hasFailedReport = null;
 
     public CodePushReportingManager(Activity cordovaActivity, CodePushPreferences codePushPreferences) {
         this.cordovaActivity = cordovaActivity;
@@ -46,34 +45,6 @@ public class CodePushReportingManager {
         });
     }
 
-    public boolean hasFailedReport() {
-        if (hasFailedReport == null) {
-            hasFailedReport = codePushPreferences.getFailedReport() != null;
-        }
-
-        return hasFailedReport;
-    }
-
-    public StatusReport getAndClearFailedReport() {
-        StatusReport failedReport = codePushPreferences.getFailedReport();
-        codePushPreferences.clearFailedReport();
-        this.hasFailedReport = false;
-        return failedReport;
-    }
-
-    public void saveFailedReport(StatusReport statusReport) {
-        codePushPreferences.saveFailedReport(statusReport);
-        this.hasFailedReport = true;
-    }
-
-    public void saveSuccessfulReport(StatusReport statusReport) {
-        if (statusReport.status == ReportingStatus.STORE_VERSION || statusReport.status == ReportingStatus.UPDATE_CONFIRMED) {
-            codePushPreferences.saveLastVersion(statusReport.label == null ? statusReport.appVersion : statusReport.label, statusReport.deploymentKey);
-            codePushPreferences.clearFailedReport();
-            this.hasFailedReport = false;
-        }
-    }
-
     private String convertStringParameter(String input) {
         if (null == input) {
             return "undefined";
@@ -0,0 +1,107 @@
+package com.microsoft.cordova;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CodePushStorage backed by one SharedPreferences file per group.
+ * The state is now kept by CodePushJournalStorage, which only reads this storage to migrate it.
+ */
+public class CodePushSharedPreferencesStorage implements CodePushStorage {
+
+    private Context context;
+
+    public CodePushSharedPreferencesStorage(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public String getString(String group, String key, String defaultValue) {
+        return getSharedPreferences(group).getString(key, defaultValue);
+    }
+
+    @Override
+    public int getInt(String group, String key, int defaultValue) {
+        return getSharedPreferences(group).getInt(key, defaultValue);
+    }
+
+    @Override
+    public boolean getBoolean(String group, String key, boolean defaultValue) {
+        return getSharedPreferences(group).getBoolean(key, defaultValue);
+    }
+
+    @Override
+    public Set<String> getStringSet(String group, String key, Set<String> defaultValue) {
+        return getSharedPreferences(group).getStringSet(key, defaultValue);
+    }
+
+    @Override
+    public Map<String, ?> getAll(String group) {
+        return getSharedPreferences(group).getAll();
+    }
+
+    @Override
+    public Editor edit(String group) {
+        final SharedPreferences.Editor editor = getSharedPreferences(group).edit();
+        return new Editor() {
+            @Override
+            public Editor putString(String key, String value) {
+                editor.putString(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                editor.putInt(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                editor.putBoolean(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> value) {
+                editor.putStringSet(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                editor.remove(key);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                editor.clear();
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                return editor.commit();
+            }
+        };
+    }
+
+    @Override
+    public boolean commit(Editor... editors) {
+        /* each file is written separately */
+        boolean result = true;
+        for (Editor editor : editors) {
+            result &= editor.commit();
+        }
+
+        return result;
+    }
+
+    private SharedPreferences getSharedPreferences(String group) {
+        return context.getSharedPreferences(group, Context.MODE_PRIVATE);
+    }
+}
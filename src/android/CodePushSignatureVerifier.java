@@ -0,0 +1,80 @@
+package com.microsoft.cordova;
+
+import android.util.Base64;
+
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Verifies the JWT signatures of the updates against the public key configured for the application.
+ */
+public class CodePushSignatureVerifier {
+    private static final String NEW_LINE = System.getProperty("line.separator");
+    private static final Map<String, JWSVerifier> Verifiers = new HashMap<String, JWSVerifier>();
+
+    /**
+     * Returns the verifier of the signatures made with the given public key. The key is parsed once per process,
+     * and the verifier is shared, since it holds no state between verifications.
+     */
+    public static JWSVerifier getVerifier(String stringPublicKey) throws CodePushException {
+        synchronized (Verifiers) {
+            JWSVerifier verifier = Verifiers.get(stringPublicKey);
+            if (verifier == null) {
+                verifier = createVerifier(stringPublicKey);
+                Verifiers.put(stringPublicKey, verifier);
+            }
+
+            return verifier;
+        }
+    }
+
+    /**
+     * Creates a verifier for the given public key, without caching it.
+     */
+    public static JWSVerifier createVerifier(String stringPublicKey) throws CodePushException {
+        PublicKey publicKey = parsePublicKey(stringPublicKey);
+        try {
+            return new RSASSAVerifier((RSAPublicKey) publicKey);
+        } catch (Exception e) {
+            throw new CodePushException(e);
+        }
+    }
+
+    public static Map<String, Object> verifyAndDecodeJWT(String jwt, JWSVerifier verifier) throws CodePushException {
+        try {
+            SignedJWT signedJWT = SignedJWT.parse(jwt);
+            if (signedJWT.verify(verifier)) {
+                Map<String, Object> claims = signedJWT.getJWTClaimsSet().getClaims();
+                Utilities.logMessage("JWT verification succeeded, payload content: " + claims.toString());
+                return claims;
+            }
+            throw new CodePushException("JWT verification failed: wrong signature");
+        } catch (Exception e) {
+            throw new CodePushException(e);
+        }
+    }
+
+    private static PublicKey parsePublicKey(String stringPublicKey) throws CodePushException {
+        try {
+            stringPublicKey = stringPublicKey
+                    .replace("-----BEGIN PUBLIC KEY-----", "")
+                    .replace("-----END PUBLIC KEY-----", "")
+                    .replace("&#xA;", "") //gradle automatically replaces new line to &#xA;
+                    .replace(NEW_LINE, "");
+            byte[] byteKey = Base64.decode(stringPublicKey.getBytes(), Base64.DEFAULT);
+            X509EncodedKeySpec X509Key = new X509EncodedKeySpec(byteKey);
+            KeyFactory kf = KeyFactory.getInstance("RSA");
+            return kf.generatePublic(X509Key);
+        } catch (Exception e) {
+            throw new CodePushException(e);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.microsoft.cordova;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of state records. Every record is written with a single write followed by a single fsync,
+ * and is framed by its length and checksum, so a record torn by a crash is detected and dropped on replay.
+ * The log is compacted by replacing it with a snapshot record, which is written aside and renamed.
+ */
+public class CodePushStateJournal {
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final File file;
+    private FileOutputStream outputStream;
+    private long length;
+    /* set when a failed append may have left part of a record after the last complete one */
+    private boolean hasIncompleteRecord = false;
+
+    public CodePushStateJournal(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Reads the records of the journal in order. The records that follow a torn or corrupted one are dropped,
+     * and the journal is truncated so that new records are appended after the last valid one.
+     */
+    public List<byte[]> replay() throws IOException {
+        List<byte[]> records = new ArrayList<byte[]>();
+        length = 0;
+
+        DataInputStream inputStream;
+        try {
+            inputStream = new DataInputStream(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            return records;
+        }
+
+        try {
+            while (true) {
+                int recordSize = inputStream.readInt();
+                long checksum = inputStream.readInt() & 0xFFFFFFFFL;
+                if (recordSize < 0 || recordSize > MAX_RECORD_SIZE) {
+                    break;
+                }
+
+                byte[] record = new byte[recordSize];
+                inputStream.readFully(record);
+                if (getChecksum(record) != checksum) {
+                    break;
+                }
+
+                records.add(record);
+                length += RECORD_HEADER_SIZE + recordSize;
+            }
+        } catch (EOFException e) {
+            /* end of the journal, or a record interrupted by a crash */
+        } finally {
+            inputStream.close();
+        }
+
+        if (length < file.length()) {
+            Utilities.logMessage("Dropping " + (file.length() - length) + " bytes of incomplete state records");
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(length);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Appends a record and waits until it is on disk.
+     */
+    public void append(byte[] record) throws IOException {
+        if (hasIncompleteRecord) {
+            truncateIncompleteRecord();
+        }
+
+        try {
+            if (outputStream == null) {
+                outputStream = new FileOutputStream(file, true);
+            }
+
+            outputStream.write(frame(record));
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            /* replay stops at a partially written record, so the records appended after it would be lost */
+            hasIncompleteRecord = true;
+            closeQuietly();
+            try {
+                truncateIncompleteRecord();
+            } catch (IOException truncateError) {
+                Utilities.logException(truncateError);
+            }
+
+            throw e;
+        }
+
+        length += RECORD_HEADER_SIZE + record.length;
+    }
+
+    /**
+     * Truncates the journal back to its last complete record. If that fails too, it is retried before the next append,
+     * which fails until then, and the next compaction replaces the journal anyway.
+     */
+    private void truncateIncompleteRecord() throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(length);
+            randomAccessFile.getFD().sync();
+        } finally {
+            randomAccessFile.close();
+        }
+
+        hasIncompleteRecord = false;
+    }
+
+    /**
+     * Replaces the whole journal with a single snapshot record.
+     */
+    public void rewrite(byte[] snapshotRecord) throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream temporaryOutputStream = new FileOutputStream(temporaryFile);
+        try {
+            temporaryOutputStream.write(frame(snapshotRecord));
+            temporaryOutputStream.getFD().sync();
+        } finally {
+            temporaryOutputStream.close();
+        }
+
+        closeQuietly();
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Could not replace " + file.getPath());
+        }
+
+        length = RECORD_HEADER_SIZE + snapshotRecord.length;
+        hasIncompleteRecord = false;
+        syncParentDirectory();
+    }
+
+    /**
+     * Makes the rename of a compaction durable, which is recorded in the parent directory rather than in the journal itself.
+     * Directories can only be synced through the system calls, and a failure is not fatal since the old journal holds the same state.
+     */
+    private void syncParentDirectory() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        try {
+            FileDescriptor directoryDescriptor = Os.open(file.getParentFile().getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(directoryDescriptor);
+            } finally {
+                Os.close(directoryDescriptor);
+            }
+        } catch (ErrnoException e) {
+            Utilities.logException(e);
+        }
+    }
+
+    public void close() throws IOException {
+        if (outputStream != null) {
+            FileOutputStream closedOutputStream = outputStream;
+            outputStream = null;
+            closedOutputStream.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            Utilities.logException(e);
+        }
+    }
+
+    private static byte[] frame(byte[] record) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(RECORD_HEADER_SIZE + record.length);
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeInt(record.length);
+        dataOutputStream.writeInt((int) getChecksum(record));
+        dataOutputStream.write(record);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private static long getChecksum(byte[] record) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(record, 0, record.length);
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,48 @@
+package com.microsoft.cordova;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Key-value storage behind CodePushPreferences.
+ * Values are grouped by preference name, the same way they are split between the SharedPreferences files.
+ */
+public interface CodePushStorage {
+
+    String getString(String group, String key, String defaultValue);
+
+    int getInt(String group, String key, int defaultValue);
+
+    boolean getBoolean(String group, String key, boolean defaultValue);
+
+    Set<String> getStringSet(String group, String key, Set<String> defaultValue);
+
+    Map<String, ?> getAll(String group);
+
+    Editor edit(String group);
+
+    /**
+     * Commits the changes of several editors, which are persisted together when the storage supports it.
+     */
+    boolean commit(Editor... editors);
+
+    /**
+     * Batches changes to a single group, which are persisted together by commit().
+     */
+    interface Editor {
+
+        Editor putString(String key, String value);
+
+        Editor putInt(String key, int value);
+
+        Editor putBoolean(String key, boolean value);
+
+        Editor putStringSet(String key, Set<String> value);
+
+        Editor remove(String key);
+
+        Editor clear();
+
+        boolean commit();
+    }
+}
@@ -0,0 +1,105 @@
+package com.microsoft.cordova;
+
+import java.io.File;
+
+/**
+ * Deletes package folders without blocking the caller. Entries are renamed into the trash folder, which is atomic and
+ * makes them disappear immediately, and the trash is emptied by a background priority task.
+ * Since the trash is persisted, entries left over by a process that was killed are deleted after the next start.
+ */
+public class CodePushTrash {
+    public static final String CODEPUSH_PATH = "/codepush";
+    public static final String TRASH_PATH = CODEPUSH_PATH + "/trash";
+    private static final String TRASH_FOLDER_NAME = "trash";
+
+    /* one worker per process, shared by all the instances */
+    private static boolean isWorkerRunning = false;
+    private static boolean isEmptyRequested = false;
+
+    private final File filesDir;
+    private final File trashDir;
+
+    public CodePushTrash(File filesDir) {
+        this.filesDir = filesDir;
+        this.trashDir = new File(filesDir, TRASH_PATH);
+    }
+
+    /**
+     * Moves the given entry to the trash. If it cannot be renamed, it is deleted synchronously.
+     */
+    public void moveToTrash(File entry) {
+        if (!entry.exists()) {
+            return;
+        }
+
+        if (trashDir.isDirectory() || trashDir.mkdirs()) {
+            File trashEntry = new File(trashDir, System.nanoTime() + "-" + entry.getName());
+            if (entry.renameTo(trashEntry)) {
+                return;
+            }
+        }
+
+        Utilities.logMessage("Could not move " + entry.getPath() + " to the trash, deleting it.");
+        Utilities.deleteEntryRecursively(entry);
+    }
+
+    /**
+     * Moves all the CodePush files to the trash, except the trash itself.
+     */
+    public void moveAllToTrash() {
+        File[] entries = new File(filesDir, CODEPUSH_PATH).listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        for (File entry : entries) {
+            if (!entry.getName().equals(TRASH_FOLDER_NAME)) {
+                moveToTrash(entry);
+            }
+        }
+    }
+
+    /**
+     * Empties the trash on the I/O lane at background priority, then collects the blobs that the deleted packages were the last to reference.
+     * Requests made while the trash is being emptied are served by the running task.
+     */
+    public void emptyInBackground() {
+        synchronized (CodePushTrash.class) {
+            isEmptyRequested = true;
+            if (isWorkerRunning) {
+                return;
+            }
+
+            isWorkerRunning = true;
+        }
+
+        CodePushExecutor.getInstance().execute(CodePushExecutor.Lane.IO, CodePushExecutor.Priority.BACKGROUND, new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    synchronized (CodePushTrash.class) {
+                        if (!isEmptyRequested) {
+                            isWorkerRunning = false;
+                            return;
+                        }
+
+                        isEmptyRequested = false;
+                    }
+
+                    try {
+                        File[] trashEntries = trashDir.listFiles();
+                        if (trashEntries != null && trashEntries.length > 0) {
+                            for (File trashEntry : trashEntries) {
+                                Utilities.deleteEntryRecursively(trashEntry);
+                            }
+
+                            new UpdateBlobStore(filesDir).sweep();
+                        }
+                    } catch (Exception e) {
+                        Utilities.logException(e);
+                    }
+                }
+            }
+        });
+    }
+}
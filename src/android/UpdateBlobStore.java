@@ -0,0 +1,93 @@
+package com.microsoft.cordova;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Content-addressable store of the package files, keyed by their SHA-256 hash.
+ * Each blob is hard linked into the package folders that contain it, so a file shared by several packages is stored once,
+ * and the link count of the blob is its reference count. Removing a package folder only releases its references,
+ * and the blobs that are no longer referenced by any package are collected by sweep().
+ */
+public class UpdateBlobStore {
+    public static final String BLOBS_PATH = "/codepush/blobs";
+    private static final String LINK_TEMP_SUFFIX = ".codepushlink";
+
+    private final File blobsDir;
+
+    public UpdateBlobStore(File filesDir) {
+        this.blobsDir = new File(filesDir, BLOBS_PATH);
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * Adds the given package files to the store. Files whose contents are already stored are replaced by a link to the stored blob.
+     *
+     * @param packageDir the package folder
+     * @param fileHashes the hashes of the files to add, keyed by their path relative to the package folder
+     */
+    public void addPackageFiles(File packageDir, Map<String, String> fileHashes) {
+        if (!isSupported() || (!blobsDir.isDirectory() && !blobsDir.mkdirs())) {
+            return;
+        }
+
+        for (Map.Entry<String, String> fileHash : fileHashes.entrySet()) {
+            File file = new File(packageDir, fileHash.getKey());
+            if (!file.isFile()) {
+                /* deleted by a diff update */
+                continue;
+            }
+
+            File blob = new File(blobsDir, fileHash.getValue());
+            try {
+                if (blob.exists()) {
+                    /* link next to the file first, so that the file is replaced atomically */
+                    File linkFile = new File(file.getPath() + LINK_TEMP_SUFFIX);
+                    Os.link(blob.getPath(), linkFile.getPath());
+                    if (!linkFile.renameTo(file)) {
+                        linkFile.delete();
+                    }
+                } else {
+                    Os.link(file.getPath(), blob.getPath());
+                }
+            } catch (ErrnoException e) {
+                /* the package files stay as they are, only the sharing is lost */
+                Utilities.logMessage("Could not add the package files to the blob store. " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes the blobs that are not linked into any package folder.
+     * Deleting a blob only removes its name, so a package that links it concurrently keeps the contents.
+     */
+    public void sweep() {
+        File[] blobs = blobsDir.listFiles();
+        if (!isSupported() || blobs == null) {
+            return;
+        }
+
+        int deletedBlobCount = 0;
+        for (File blob : blobs) {
+            try {
+                if (Os.stat(blob.getPath()).st_nlink <= 1 && blob.delete()) {
+                    deletedBlobCount++;
+                }
+            } catch (ErrnoException e) {
+                Utilities.logException(e);
+            }
+        }
+
+        if (deletedBlobCount > 0) {
+            Utilities.logMessage("Deleted " + deletedBlobCount + " unreferenced package files");
+        }
+    }
+}
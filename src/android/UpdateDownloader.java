@@ -0,0 +1,295 @@
+package com.microsoft.cordova;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Downloads update archives, computing their hash as the bytes arrive.
+ * The archive is streamed into a partial file, which is resumed with an HTTP range request after a connection drop,
+ * or on the next download of the same URL if the app was killed in between.
+ */
+public class UpdateDownloader {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+    private static final String PARTIAL_INFO_FILE_SUFFIX = ".part.info";
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 15 * 1000;
+    private static final int READ_TIMEOUT_MS = 30 * 1000;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Receives the progress of a download.
+     */
+    public interface ProgressListener {
+        /**
+         * @param receivedBytes the number of bytes of the archive written so far, including the resumed ones
+         * @param totalBytes    the size of the archive, or -1 if the server did not report it
+         */
+        void onProgress(long receivedBytes, long totalBytes);
+    }
+
+    /**
+     * A response code other than the ones of a download. Only server errors, timeouts and throttling are worth retrying,
+     * the other client errors such as a missing or expired archive fail the same way on every attempt.
+     */
+    private static class UnexpectedResponseException extends IOException {
+        private final int responseCode;
+
+        UnexpectedResponseException(int responseCode, String url) {
+            super("Unexpected response code " + responseCode + " for " + url);
+            this.responseCode = responseCode;
+        }
+
+        boolean isRetryable() {
+            return responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                    || responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                    || responseCode == HTTP_TOO_MANY_REQUESTS;
+        }
+    }
+
+    private final int bufferSize;
+
+    public UpdateDownloader(int bufferSize) {
+        this.bufferSize = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+    }
+
+    /**
+     * Downloads the given URL into the destination file and returns the SHA-256 hash of the downloaded archive.
+     * I/O errors, server errors, request timeouts and throttling are retried, the other unexpected response codes fail right away.
+     */
+    public String download(String url, File destination, ProgressListener progressListener) throws IOException, NoSuchAlgorithmException, InterruptedException {
+        File partialFile = new File(destination.getPath() + PARTIAL_FILE_SUFFIX);
+        File partialInfoFile = new File(destination.getPath() + PARTIAL_INFO_FILE_SUFFIX);
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+
+        /* resume what a previous process left behind, the partial bytes are hashed again since the digest state was lost */
+        String validator = readValidator(partialInfoFile, url);
+        if (validator == null || !partialFile.exists()) {
+            validator = null;
+            deletePartialDownload(partialFile, partialInfoFile);
+        } else {
+            hashExistingBytes(partialFile, messageDigest);
+        }
+
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                validator = downloadRange(url, partialFile, partialInfoFile, validator, messageDigest, progressListener);
+                if (destination.exists() && !destination.delete()) {
+                    throw new IOException("Could not replace " + destination.getPath());
+                }
+                if (!partialFile.renameTo(destination)) {
+                    throw new IOException("Could not move the downloaded archive to " + destination.getPath());
+                }
+                partialInfoFile.delete();
+                return UpdateHashKernel.toHexString(messageDigest.digest());
+            } catch (IOException e) {
+                lastError = e;
+                Utilities.logMessage("Update download attempt " + attempt + " failed: " + e.getMessage());
+                if (e instanceof UnexpectedResponseException && !((UnexpectedResponseException) e).isRetryable()) {
+                    throw e;
+                }
+
+                validator = readValidator(partialInfoFile, url);
+                messageDigest.reset();
+                if (validator == null || !partialFile.exists()) {
+                    /* the server does not support resuming this download, so the next attempt starts over */
+                    validator = null;
+                    deletePartialDownload(partialFile, partialInfoFile);
+                } else {
+                    /* a write that failed partway may have left bytes that were never hashed */
+                    try {
+                        hashExistingBytes(partialFile, messageDigest);
+                    } catch (IOException hashError) {
+                        Utilities.logException(hashError);
+                        validator = null;
+                        deletePartialDownload(partialFile, partialInfoFile);
+                        messageDigest.reset();
+                    }
+                }
+
+                if (attempt < MAX_ATTEMPTS) {
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                }
+            }
+        }
+
+        throw lastError;
+    }
+
+    /**
+     * Requests the bytes that are missing from the partial file and appends them to it.
+     * Returns the validator (ETag or Last-Modified) that allows resuming the download, or null if it cannot be resumed.
+     */
+    private String downloadRange(String url, File partialFile, File partialInfoFile, String validator, MessageDigest messageDigest, ProgressListener progressListener) throws IOException {
+        long existingBytes = partialFile.exists() ? partialFile.length() : 0;
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            /* the range must be in terms of the stored bytes, not of a transparently decompressed stream */
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            if (existingBytes > 0 && validator != null) {
+                connection.setRequestProperty("Range", "bytes=" + existingBytes + "-");
+                connection.setRequestProperty("If-Range", validator);
+            }
+
+            int responseCode = connection.getResponseCode();
+            boolean append;
+            long totalBytes;
+            if (existingBytes > 0 && (responseCode == HTTP_RANGE_NOT_SATISFIABLE
+                    || (responseCode == HttpURLConnection.HTTP_PARTIAL && getContentRangeStart(connection) != existingBytes))) {
+                /* the partial file is already complete, or the server resumed from another offset, so the download starts over */
+                Utilities.logMessage("Could not resume the download of " + url + " after " + existingBytes + " bytes (response code " + responseCode + "), starting over.");
+                connection.disconnect();
+                deletePartialDownload(partialFile, partialInfoFile);
+                messageDigest.reset();
+                return downloadRange(url, partialFile, partialInfoFile, null, messageDigest, progressListener);
+            } else if (responseCode == HttpURLConnection.HTTP_PARTIAL && existingBytes > 0) {
+                append = true;
+                long remainingBytes = connection.getContentLength();
+                totalBytes = remainingBytes >= 0 ? existingBytes + remainingBytes : -1;
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                /* either a fresh download, or the archive changed on the server since the partial bytes were written */
+                append = false;
+                existingBytes = 0;
+                messageDigest.reset();
+                totalBytes = connection.getContentLength();
+            } else {
+                throw new UnexpectedResponseException(responseCode, url);
+            }
+
+            String newValidator = getValidator(connection);
+            if (newValidator != null) {
+                writeValidator(partialInfoFile, url, newValidator);
+            } else {
+                partialInfoFile.delete();
+            }
+
+            InputStream inputStream = connection.getInputStream();
+            FileOutputStream fileOutputStream = new FileOutputStream(partialFile, append);
+            try {
+                FileChannel fileChannel = fileOutputStream.getChannel();
+                ReadableByteChannel inputChannel = Channels.newChannel(inputStream);
+                ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+                long receivedBytes = existingBytes;
+                int bytesRead;
+                while ((bytesRead = inputChannel.read(buffer)) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        fileChannel.write(buffer);
+                    }
+                    /* only hashed once written, so that the digest never covers bytes missing from the partial file */
+                    messageDigest.update(buffer.array(), 0, bytesRead);
+                    buffer.clear();
+
+                    receivedBytes += bytesRead;
+                    if (progressListener != null) {
+                        progressListener.onProgress(receivedBytes, totalBytes);
+                    }
+                }
+
+                if (totalBytes >= 0 && receivedBytes != totalBytes) {
+                    throw new IOException("The connection was closed after " + receivedBytes + " of " + totalBytes + " bytes.");
+                }
+            } finally {
+                fileOutputStream.close();
+                inputStream.close();
+            }
+
+            return newValidator;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void hashExistingBytes(File partialFile, MessageDigest messageDigest) throws IOException {
+        FileInputStream fileInputStream = new FileInputStream(partialFile);
+        try {
+            FileChannel fileChannel = fileInputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            int bytesRead;
+            while ((bytesRead = fileChannel.read(buffer)) != -1) {
+                messageDigest.update(buffer.array(), 0, bytesRead);
+                buffer.clear();
+            }
+        } finally {
+            fileInputStream.close();
+        }
+    }
+
+    /**
+     * Returns the offset of the first byte of a partial response, as reported by its Content-Range header ("bytes start-end/total"),
+     * or -1 if the header is missing or malformed.
+     */
+    private static long getContentRangeStart(HttpURLConnection connection) {
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return -1;
+        }
+
+        int separatorIndex = contentRange.indexOf('-');
+        if (separatorIndex == -1) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring("bytes ".length(), separatorIndex).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String getValidator(HttpURLConnection connection) {
+        String eTag = connection.getHeaderField("ETag");
+        /* weak ETags cannot be used with If-Range */
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+
+        return connection.getHeaderField("Last-Modified");
+    }
+
+    private static String readValidator(File partialInfoFile, String url) {
+        try {
+            if (partialInfoFile.exists()) {
+                String[] lines = Utilities.readFileContents(partialInfoFile).split("\n");
+                if (lines.length >= 2 && url.equals(lines[0]) && !lines[1].isEmpty()) {
+                    return lines[1];
+                }
+            }
+        } catch (IOException e) {
+            Utilities.logException(e);
+        }
+
+        return null;
+    }
+
+    private static void writeValidator(File partialInfoFile, String url, String validator) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(partialInfoFile);
+        try {
+            fileOutputStream.write((url + "\n" + validator + "\n").getBytes("UTF-8"));
+        } finally {
+            fileOutputStream.close();
+        }
+    }
+
+    private static void deletePartialDownload(File partialFile, File partialInfoFile) {
+        partialFile.delete();
+        partialInfoFile.delete();
+    }
+}
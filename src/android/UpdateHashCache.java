@@ -0,0 +1,172 @@
+package com.microsoft.cordova;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of the hashes of the individual files of a package, keyed by relative path, size and last modification time.
+ * The cache is stored next to the hashed folder, so it is deleted together with the package.
+ */
+public class UpdateHashCache {
+    private static final String CACHE_FILE_NAME = ".codepushhashcache";
+    private static final String CACHE_FILE_HEADER = "codepush-hash-cache-v1";
+    private static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * Files modified this close to the moment the cache was loaded are not cached, since a subsequent
+     * modification within the file system timestamp granularity would go unnoticed.
+     */
+    private static final long RACY_MODIFICATION_INTERVAL_MS = 2000;
+
+    private final File cacheFile;
+    private final long loadTimeMs;
+    private final Map<String, CacheEntry> loadedEntries;
+    private final Map<String, CacheEntry> usedEntries = new ConcurrentHashMap<String, CacheEntry>();
+    private volatile boolean hasNewEntries = false;
+
+    private UpdateHashCache(File cacheFile, Map<String, CacheEntry> loadedEntries) {
+        this.cacheFile = cacheFile;
+        this.loadTimeMs = System.currentTimeMillis();
+        this.loadedEntries = loadedEntries;
+    }
+
+    /**
+     * Returns the file the hash cache of the given folder is stored in.
+     */
+    public static File getCacheFile(File hashedFolder) {
+        return new File(hashedFolder.getParentFile(), CACHE_FILE_NAME);
+    }
+
+    /**
+     * Loads the hash cache stored next to the given folder. If there is no cache, or it cannot be read, an empty cache is returned.
+     */
+    public static UpdateHashCache load(File hashedFolder) {
+        File cacheFile = getCacheFile(hashedFolder);
+        Map<String, CacheEntry> entries = new ConcurrentHashMap<String, CacheEntry>();
+        if (cacheFile.exists()) {
+            try {
+                readEntries(cacheFile, entries);
+            } catch (Exception e) {
+                /* a corrupted cache only costs a full re-hash */
+                Utilities.logException(e);
+                entries.clear();
+            }
+        }
+
+        return new UpdateHashCache(cacheFile, entries);
+    }
+
+    /**
+     * Returns the cached hash of the given file, or null if the file is not cached or has changed since it was cached.
+     */
+    public String getHash(String relativePath, long size, long lastModified) {
+        CacheEntry entry = loadedEntries.get(relativePath);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            usedEntries.put(relativePath, entry);
+            return entry.hash;
+        }
+
+        return null;
+    }
+
+    public void putHash(String relativePath, long size, long lastModified, String hash) {
+        if (relativePath.indexOf('\n') != -1 || lastModified <= 0 || lastModified > loadTimeMs - RACY_MODIFICATION_INTERVAL_MS) {
+            return;
+        }
+
+        usedEntries.put(relativePath, new CacheEntry(size, lastModified, hash));
+        hasNewEntries = true;
+    }
+
+    /**
+     * Persists the cache if it changed. Entries of files that were not looked up since the cache was loaded are dropped.
+     */
+    public void save() {
+        if (!hasNewEntries && usedEntries.size() == loadedEntries.size()) {
+            return;
+        }
+
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            writeEntries(tempFile, usedEntries);
+            if (!tempFile.renameTo(cacheFile)) {
+                throw new IOException("Could not replace the hash cache file " + cacheFile.getPath());
+            }
+        } catch (IOException e) {
+            Utilities.logException(e);
+            tempFile.delete();
+        }
+    }
+
+    private static void readEntries(File cacheFile, Map<String, CacheEntry> entries) throws IOException {
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new FileReader(cacheFile));
+            if (!CACHE_FILE_HEADER.equals(br.readLine())) {
+                return;
+            }
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                /* size, last modified, hash, path - the path goes last since it may contain the separator */
+                int sizeEnd = line.indexOf(FIELD_SEPARATOR);
+                int lastModifiedEnd = line.indexOf(FIELD_SEPARATOR, sizeEnd + 1);
+                int hashEnd = line.indexOf(FIELD_SEPARATOR, lastModifiedEnd + 1);
+                if (sizeEnd == -1 || lastModifiedEnd == -1 || hashEnd == -1) {
+                    throw new IOException("Malformed hash cache entry: " + line);
+                }
+
+                long size = Long.parseLong(line.substring(0, sizeEnd));
+                long lastModified = Long.parseLong(line.substring(sizeEnd + 1, lastModifiedEnd));
+                String hash = line.substring(lastModifiedEnd + 1, hashEnd);
+                entries.put(line.substring(hashEnd + 1), new CacheEntry(size, lastModified, hash));
+            }
+        } finally {
+            if (br != null) {
+                br.close();
+            }
+        }
+    }
+
+    private static void writeEntries(File file, Map<String, CacheEntry> entries) throws IOException {
+        BufferedWriter bw = null;
+        try {
+            bw = new BufferedWriter(new FileWriter(file));
+            bw.write(CACHE_FILE_HEADER);
+            bw.write('\n');
+            for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+                CacheEntry cacheEntry = entry.getValue();
+                bw.write(Long.toString(cacheEntry.size));
+                bw.write(FIELD_SEPARATOR);
+                bw.write(Long.toString(cacheEntry.lastModified));
+                bw.write(FIELD_SEPARATOR);
+                bw.write(cacheEntry.hash);
+                bw.write(FIELD_SEPARATOR);
+                bw.write(entry.getKey());
+                bw.write('\n');
+            }
+        } finally {
+            if (bw != null) {
+                bw.close();
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+        final long size;
+        final long lastModified;
+        final String hash;
+
+        CacheEntry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
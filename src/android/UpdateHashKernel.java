@@ -0,0 +1,123 @@
+package com.microsoft.cordova;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the SHA-256 hashes of individual update files.
+ * Each thread reuses its own digest and read buffer, so hashing a file does not allocate anything besides the resulting string.
+ */
+public class UpdateHashKernel {
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* Files at least this large are memory mapped instead of being copied into the read buffer. */
+    private static final long MAPPED_READ_THRESHOLD = 1024 * 1024;
+    /* Large files are mapped one region at a time, to keep the address space usage bounded on 32 bit devices. */
+    private static final long MAPPED_REGION_SIZE = 8 * 1024 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> threadDigest = new ThreadLocal<MessageDigest>();
+    private static final ThreadLocal<ByteBuffer> threadBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * Returns the hash of the given file as a lowercase hex string.
+     */
+    public static String hashFile(File file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = getThreadDigest();
+        FileInputStream fileInputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = fileInputStream.getChannel();
+            long size = channel.size();
+            if (size >= MAPPED_READ_THRESHOLD) {
+                for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+                    messageDigest.update(region);
+                }
+            } else {
+                ByteBuffer buffer = threadBuffer.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    messageDigest.update(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            }
+        } finally {
+            fileInputStream.close();
+        }
+
+        return toHexString(messageDigest.digest());
+    }
+
+    /**
+     * Returns the hash of the contents of the given stream as a lowercase hex string. The stream is closed.
+     */
+    public static String hashStream(InputStream inputStream) throws IOException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = getThreadDigest();
+        try {
+            byte[] buffer = threadBuffer.get().array();
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, bytesRead);
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return toHexString(messageDigest.digest());
+    }
+
+    /**
+     * Copies the given stream into the output stream and returns the hash of the copied bytes as a lowercase hex string.
+     * Neither stream is closed.
+     */
+    public static String copyAndHash(InputStream inputStream, OutputStream outputStream) throws IOException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = getThreadDigest();
+        byte[] buffer = threadBuffer.get().array();
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            messageDigest.update(buffer, 0, bytesRead);
+            outputStream.write(buffer, 0, bytesRead);
+        }
+
+        return toHexString(messageDigest.digest());
+    }
+
+    public static String toHexString(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xFF;
+            hex[i * 2] = HEX_DIGITS[value >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[value & 0x0F];
+        }
+
+        return new String(hex);
+    }
+
+    private static MessageDigest getThreadDigest() throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = threadDigest.get();
+        if (messageDigest == null) {
+            messageDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+            threadDigest.set(messageDigest);
+        } else {
+            /* a previous hash may have been interrupted by an exception */
+            messageDigest.reset();
+        }
+
+        return messageDigest;
+    }
+}
@@ -0,0 +1,127 @@
+package com.microsoft.cordova;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent requests for the hash of the same target. The first request starts the computation on the CPU lane,
+ * and the requests made while it is running wait for its result instead of hashing the target again.
+ * Successful results are kept for a short time, so that repeated requests are served without hashing.
+ */
+public class UpdateHashRequests {
+    public static final long DEFAULT_RESULT_LIFETIME_MS = 5000;
+
+    private final long resultLifetimeNanos;
+    private final Map<String, List<Callback>> runningComputations = new HashMap<String, List<Callback>>();
+    private final Map<String, CachedResult> cachedResults = new HashMap<String, CachedResult>();
+
+    public interface Computation {
+        String compute() throws Exception;
+    }
+
+    public interface Callback {
+        void onSuccess(String hash);
+
+        void onError(Exception e);
+    }
+
+    private static class CachedResult {
+        final String hash;
+        final long expirationNanos;
+
+        CachedResult(String hash, long expirationNanos) {
+            this.hash = hash;
+            this.expirationNanos = expirationNanos;
+        }
+    }
+
+    public UpdateHashRequests(long resultLifetimeMs) {
+        this.resultLifetimeNanos = resultLifetimeMs * 1000000;
+    }
+
+    /**
+     * Requests the hash of the given target. The callback is invoked on a background thread, or on the calling thread if a cached result is available.
+     * If the computation is dropped by a cancellation of the executor before it ran, the requests waiting for it fail.
+     *
+     * @param target      identifies what is hashed, typically its path
+     * @param computation computes the hash if no computation for the target is running and no cached result is available
+     */
+    public void request(final String target, final Computation computation, Callback callback) {
+        String cachedHash = null;
+        final List<Callback> callbacks;
+        synchronized (this) {
+            CachedResult cachedResult = cachedResults.get(target);
+            if (cachedResult != null && System.nanoTime() - cachedResult.expirationNanos < 0) {
+                cachedHash = cachedResult.hash;
+                callbacks = null;
+            } else {
+                cachedResults.remove(target);
+                List<Callback> runningCallbacks = runningComputations.get(target);
+                if (runningCallbacks != null) {
+                    runningCallbacks.add(callback);
+                    return;
+                }
+
+                callbacks = new ArrayList<Callback>();
+                callbacks.add(callback);
+                runningComputations.put(target, callbacks);
+            }
+        }
+
+        if (callbacks == null) {
+            callback.onSuccess(cachedHash);
+            return;
+        }
+
+        CodePushExecutor.getInstance().execute(CodePushExecutor.Lane.CPU, CodePushExecutor.Priority.USER_VISIBLE, new CodePushExecutor.CancellableRunnable() {
+            @Override
+            public void run() {
+                String hash = null;
+                Exception error = null;
+                try {
+                    hash = computation.compute();
+                } catch (Exception e) {
+                    error = e;
+                }
+
+                complete(target, callbacks, hash, error);
+            }
+
+            @Override
+            public void onCancelled() {
+                complete(target, callbacks, null, new CodePushException("The hash computation was cancelled."));
+            }
+        });
+    }
+
+    private void complete(String target, List<Callback> callbacks, String hash, Exception error) {
+        synchronized (this) {
+            /* a computation that was detached by an invalidation may have hashed stale content, so its result is not cached */
+            if (runningComputations.get(target) == callbacks) {
+                runningComputations.remove(target);
+                if (error == null) {
+                    cachedResults.put(target, new CachedResult(hash, System.nanoTime() + resultLifetimeNanos));
+                }
+            }
+        }
+
+        for (Callback callback : callbacks) {
+            if (error == null) {
+                callback.onSuccess(hash);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+
+    /**
+     * Discards the cached results and detaches the running computations, so that subsequent requests hash their target again.
+     * The results of the detached computations are still delivered to the requests waiting for them.
+     */
+    public synchronized void invalidate() {
+        runningComputations.clear();
+        cachedResults.clear();
+    }
+}
@@ -4,71 +4,294 @@ import android.app.Activity;
 import android.content.res.AssetManager;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utilities class used for native operations related to calculating hashes of update contents.
  */
 public class UpdateHashUtils {
+    private static final String PRECOMPUTED_BINARY_HASH_ASSET = "codepush.binaryhash.json";
+    private static final long IDLE_HASHING_THREAD_TIMEOUT_SECONDS = 30;
     private static final Set<String> ignoredFiles = new HashSet<String>(Arrays.asList(
             ".codepushrelease",
             ".DS_Store",
             "__MACOSX"
     ));
 
+    private static ThreadPoolExecutor hashingPool;
+
+    /**
+     * Manifest entry tasks shared by the thread that computes the hash and the threads of the hashing pool,
+     * each of them running the next task until none is left or one of them failed.
+     */
+    private static class ManifestEntryBatch implements Runnable {
+        private final List<Callable<String>> manifestEntryTasks;
+        private final String[] manifestEntries;
+        private final AtomicInteger nextTaskIndex = new AtomicInteger();
+        /* guarded by this */
+        private int completedTaskCount;
+        private Throwable failure;
+
+        ManifestEntryBatch(List<Callable<String>> manifestEntryTasks) {
+            this.manifestEntryTasks = manifestEntryTasks;
+            this.manifestEntries = new String[manifestEntryTasks.size()];
+        }
+
+        @Override
+        public void run() {
+            int taskIndex;
+            while (!hasFailed() && (taskIndex = nextTaskIndex.getAndIncrement()) < manifestEntryTasks.size()) {
+                try {
+                    String manifestEntry = manifestEntryTasks.get(taskIndex).call();
+                    synchronized (this) {
+                        manifestEntries[taskIndex] = manifestEntry;
+                        if (++completedTaskCount == manifestEntryTasks.size()) {
+                            notifyAll();
+                        }
+                    }
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private synchronized boolean hasFailed() {
+            return failure != null;
+        }
+
+        private synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+
+            notifyAll();
+        }
+
+        /**
+         * Waits for the tasks run by the other threads, and returns the non-null entries in the order of the tasks.
+         */
+        ArrayList<String> awaitManifestEntries() throws IOException, NoSuchAlgorithmException {
+            synchronized (this) {
+                try {
+                    while (failure == null && completedTaskCount < manifestEntryTasks.size()) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    /* the pool threads stop taking tasks */
+                    fail(e);
+                    Thread.currentThread().interrupt();
+                    throw new IOException("The hash computation was interrupted.");
+                }
+
+                if (failure != null) {
+                    throw unwrapHashingException(failure);
+                }
+            }
+
+            ArrayList<String> nonNullManifestEntries = new ArrayList<String>(manifestEntries.length);
+            for (String manifestEntry : manifestEntries) {
+                if (manifestEntry != null) {
+                    nonNullManifestEntries.add(manifestEntry);
+                }
+            }
+
+            return nonNullManifestEntries;
+        }
+    }
+
+    /**
+     * Returns true if files or folders with the given name are excluded from the update contents hash.
+     */
+    public static boolean isIgnoredFile(String fileName) {
+        return ignoredFiles.contains(fileName);
+    }
+
+    /**
+     * Returns the default number of threads used to hash the contents of a package, which is the number of available cores.
+     */
+    public static int getDefaultHashingThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     public static String getBinaryHash(Activity activity) throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
-        return getHashForPath(activity, null);
+        return getBinaryHash(activity, getDefaultHashingThreadCount());
+    }
+
+    /**
+     * Returns the hash of the binary contents. The hash precomputed at build time is used if it was generated for the installed build,
+     * otherwise the binary contents are hashed.
+     */
+    public static String getBinaryHash(Activity activity, int hashingThreadCount) throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
+        String precomputedBinaryHash = getPrecomputedBinaryHash(activity);
+        if (precomputedBinaryHash != null) {
+            return precomputedBinaryHash;
+        }
+
+        return getHashForPath(activity, null, hashingThreadCount);
+    }
+
+    private static String getPrecomputedBinaryHash(Activity activity) {
+        try {
+            AssetManager assetManager = activity.getAssets();
+            JSONObject precomputedBinaryHash = new JSONObject(Utilities.readStreamContents(assetManager.open(PRECOMPUTED_BINARY_HASH_ASSET)));
+            String binaryHash = precomputedBinaryHash.optString("binaryHash", null);
+            String assetPathsHash = precomputedBinaryHash.optString("assetPathsHash", null);
+            JSONArray excludedAssetPaths = precomputedBinaryHash.optJSONArray("excludedAssetPaths");
+
+            /* a stale asset or one generated by an incompatible build script must not be trusted */
+            if (binaryHash == null || !binaryHash.matches("[0-9a-f]{64}") || assetPathsHash == null || excludedAssetPaths == null
+                    || !assetPathsHash.equals(getAssetPathsHash(assetManager))) {
+                Utilities.logMessage("Ignoring the precomputed binary hash, since it does not match the packaged assets.");
+                return null;
+            }
+
+            /* the build script predicts which assets are left out of the APK, which only costs a failed lookup each to check */
+            for (int i = 0; i < excludedAssetPaths.length(); i++) {
+                try {
+                    assetManager.open(excludedAssetPaths.getString(i)).close();
+                    Utilities.logMessage("Ignoring the precomputed binary hash, since it excluded a packaged asset.");
+                    return null;
+                } catch (FileNotFoundException e) {
+                    /* excluded as predicted */
+                }
+            }
+
+            return binaryHash;
+        } catch (FileNotFoundException e) {
+            /* the binary was built without precomputing the hash */
+            return null;
+        } catch (Exception e) {
+            Utilities.logException(e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hash of the sorted paths of the www assets, before the ones excluded from the APK are left out.
+     * Must stay in sync with the codePushComputeBinaryHash task of build-extras.gradle.
+     */
+    private static String getAssetPathsHash(AssetManager assetManager) throws IOException, ClassNotFoundException, NoSuchAlgorithmException {
+        List<String> assetPaths = new ArrayList<String>(Arrays.asList(Utilities.getAssetsList(assetManager, "www", ignoredFiles)));
+        Collections.sort(assetPaths);
+        StringBuilder joinedAssetPaths = new StringBuilder();
+        for (String assetPath : assetPaths) {
+            if (joinedAssetPaths.length() > 0) {
+                joinedAssetPaths.append('\n');
+            }
+
+            joinedAssetPaths.append(assetPath);
+        }
+
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(joinedAssetPaths.toString().getBytes("UTF-8"));
+        return UpdateHashKernel.toHexString(hash);
     }
 
     public static String getHashForPath(Activity activity, String path) throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
-        ArrayList<String> manifestEntries = new ArrayList<String>();
+        return getHashForPath(activity, path, getDefaultHashingThreadCount());
+    }
+
+    /**
+     * Computes the hash of the update contents located at the given path. The individual files are hashed in parallel,
+     * on a pool of at most hashingThreadCount threads, but the resulting manifest (and therefore the hash) does not depend on the thread count.
+     *
+     * @param activity           the activity used to access the application files and assets
+     * @param path               the path of the update contents relative to the files directory, if null is passed the binary contents are hashed
+     * @param hashingThreadCount the maximum number of threads used to hash the individual files
+     */
+    public static String getHashForPath(Activity activity, String path, int hashingThreadCount) throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
+        List<Callable<String>> manifestEntryTasks = new ArrayList<Callable<String>>();
+        UpdateHashCache hashCache = null;
         if (path == null) {
-            addFolderEntriesToManifestFromAssets(manifestEntries, activity.getAssets(), "www");
+            addFolderEntriesToManifestFromAssets(manifestEntryTasks, activity.getAssets(), "www");
         } else {
             File basePath = activity.getApplicationContext().getFilesDir();
             File fullPath = new File(basePath, path);
-            addFolderEntriesToManifest(manifestEntries, "www", fullPath.getPath());
+            hashCache = UpdateHashCache.load(fullPath);
+            addFolderEntriesToManifest(manifestEntryTasks, hashCache, "www", fullPath.getPath());
+        }
+
+        ArrayList<String> manifestEntries = computeManifestEntries(manifestEntryTasks, hashingThreadCount);
+        if (hashCache != null) {
+            hashCache.save();
         }
+
         Collections.sort(manifestEntries);
-        JSONArray manifestJSONArray = new JSONArray();
+        UpdateManifestDigest manifestDigest = new UpdateManifestDigest();
         for (String manifestEntry : manifestEntries) {
-            manifestJSONArray.put(manifestEntry);
+            manifestDigest.addEntry(manifestEntry);
         }
 
-        // The JSON serialization turns path separators into "\/", e.g. "www\/images\/image.png"
-        String manifestString = manifestJSONArray.toString().replace("\\/", "/");
-        return computeHash(new ByteArrayInputStream(manifestString.getBytes()));
+        return manifestDigest.getHash();
     }
 
-    private static void addFolderEntriesToManifestFromAssets(ArrayList<String> manifestEntries, AssetManager assetManager, String path) throws IOException, NoSuchAlgorithmException, ClassNotFoundException {
-        String[] assetsList = Utilities.getAssetsList(assetManager, path, ignoredFiles);
+    /**
+     * Returns a fingerprint of the folder made of its file count, total size and latest modification time.
+     * It only reads the file attributes, and changes whenever files are added, removed or rewritten.
+     */
+    public static String getFolderFingerprint(File folder) {
+        long fileCount = 0;
+        long totalSize = 0;
+        long lastModified = 0;
+        ArrayList<File> pendingFolders = new ArrayList<File>();
+        pendingFolders.add(folder);
+        while (!pendingFolders.isEmpty()) {
+            File[] children = pendingFolders.remove(pendingFolders.size() - 1).listFiles();
+            if (children == null) {
+                continue;
+            }
 
-        for(String assetPath : assetsList){
-            try {
-                InputStream inputStream = assetManager.open(assetPath);
-                manifestEntries.add(assetPath + ":" + computeHash(inputStream));
-            } catch (FileNotFoundException e) {
-                // ignore: AAPT ignore some file which we can't, it's OK
-                // https://github.com/Microsoft/cordova-plugin-code-push/issues/374#issuecomment-376558284
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    pendingFolders.add(child);
+                } else {
+                    fileCount++;
+                    totalSize += child.length();
+                    lastModified = Math.max(lastModified, child.lastModified());
+                }
             }
         }
+
+        return fileCount + ":" + totalSize + ":" + lastModified;
+    }
+
+    private static void addFolderEntriesToManifestFromAssets(List<Callable<String>> manifestEntryTasks, final AssetManager assetManager, String path) throws IOException, ClassNotFoundException {
+        String[] assetsList = Utilities.getAssetsList(assetManager, path, ignoredFiles);
+
+        for (final String assetPath : assetsList) {
+            manifestEntryTasks.add(new Callable<String>() {
+                @Override
+                public String call() throws IOException, NoSuchAlgorithmException {
+                    try {
+                        return assetPath + ":" + UpdateHashKernel.hashStream(assetManager.open(assetPath));
+                    } catch (FileNotFoundException e) {
+                        // ignore: AAPT ignore some file which we can't, it's OK
+                        // https://github.com/Microsoft/cordova-plugin-code-push/issues/374#issuecomment-376558284
+                        return null;
+                    }
+                }
+            });
+        }
     }
 
-    private static void addFolderEntriesToManifest(ArrayList<String> manifestEntries, String prefix, String path) throws IOException, NoSuchAlgorithmException {
+    private static void addFolderEntriesToManifest(List<Callable<String>> manifestEntryTasks, final UpdateHashCache hashCache, String prefix, String path) {
         String[] fileList = new File(path).list();
 
         if (fileList != null) {
@@ -76,37 +299,85 @@ public class UpdateHashUtils {
                 if (UpdateHashUtils.ignoredFiles.contains(pathInFolder)) {
                     continue;
                 }
-                File relativePath = new File(prefix, pathInFolder);
-                File absolutePath = new File(path, pathInFolder);
+                final File relativePath = new File(prefix, pathInFolder);
+                final File absolutePath = new File(path, pathInFolder);
                 if (absolutePath.isDirectory()) {
-                    addFolderEntriesToManifest(manifestEntries, relativePath.getPath(), absolutePath.getPath());
+                    addFolderEntriesToManifest(manifestEntryTasks, hashCache, relativePath.getPath(), absolutePath.getPath());
                 } else {
-                    InputStream inputStream = new FileInputStream(absolutePath.getPath());
-                    manifestEntries.add(relativePath.getPath() + ":" + computeHash(inputStream));
+                    manifestEntryTasks.add(new Callable<String>() {
+                        @Override
+                        public String call() throws IOException, NoSuchAlgorithmException {
+                            /* only new or modified files are read */
+                            long size = absolutePath.length();
+                            long lastModified = absolutePath.lastModified();
+                            String hash = hashCache.getHash(relativePath.getPath(), size, lastModified);
+                            if (hash == null) {
+                                hash = UpdateHashKernel.hashFile(absolutePath);
+                                hashCache.putHash(relativePath.getPath(), size, lastModified, hash);
+                            }
+
+                            return relativePath.getPath() + ":" + hash;
+                        }
+                    });
                 }
             }
         }
     }
 
-    private static String computeHash(InputStream dataStream) throws IOException, NoSuchAlgorithmException {
-        MessageDigest messageDigest = null;
-        DigestInputStream digestInputStream = null;
-        try {
-            messageDigest = MessageDigest.getInstance("SHA-256");
-            digestInputStream = new DigestInputStream(dataStream, messageDigest);
-            byte[] byteBuffer = new byte[1024 * 8];
-            while (digestInputStream.read(byteBuffer) != -1);
-        } finally {
-            try {
-                if (digestInputStream != null) digestInputStream.close();
-                if (dataStream != null) dataStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * Runs the given manifest entry tasks on the calling thread and the hashing pool, with at most the given number of threads,
+     * and collects the non-null entries they produce. The entries are not sorted.
+     */
+    private static ArrayList<String> computeManifestEntries(List<Callable<String>> manifestEntryTasks, int hashingThreadCount) throws IOException, NoSuchAlgorithmException {
+        ManifestEntryBatch manifestEntryBatch = new ManifestEntryBatch(manifestEntryTasks);
+        int threadCount = Math.min(Math.max(hashingThreadCount, 1), manifestEntryTasks.size());
+        if (threadCount > 1) {
+            ThreadPoolExecutor hashingPool = getHashingPool(threadCount - 1);
+            for (int i = 1; i < threadCount; i++) {
+                hashingPool.execute(manifestEntryBatch);
             }
         }
 
-        byte[] hash = messageDigest.digest();
-        return String.format("%064x", new java.math.BigInteger(1, hash));
+        /* the calling thread takes its share of the tasks, so that the hash progresses even while the pool is busy with another one */
+        manifestEntryBatch.run();
+        return manifestEntryBatch.awaitManifestEntries();
     }
 
+    /**
+     * Returns the hashing pool of the process, grown to at least the given number of threads. Its threads are kept between hashes,
+     * so that they reuse their digests and buffers, and stop after being idle for a while.
+     */
+    private static synchronized ThreadPoolExecutor getHashingPool(int threadCount) {
+        if (hashingPool == null) {
+            hashingPool = new ThreadPoolExecutor(threadCount, threadCount, IDLE_HASHING_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CodePush-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            hashingPool.allowCoreThreadTimeOut(true);
+        } else if (threadCount > hashingPool.getMaximumPoolSize()) {
+            hashingPool.setMaximumPoolSize(threadCount);
+            hashingPool.setCorePoolSize(threadCount);
+        }
+
+        return hashingPool;
+    }
+
+    private static IOException unwrapHashingException(Throwable e) throws NoSuchAlgorithmException {
+        if (e instanceof IOException) {
+            return (IOException) e;
+        } else if (e instanceof NoSuchAlgorithmException) {
+            throw (NoSuchAlgorithmException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+
+        return new IOException(e);
+    }
 }
@@ -0,0 +1,119 @@
+package com.microsoft.cordova;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the hash of an update manifest by streaming its JSON serialization into the digest.
+ * The hashed bytes are the same as those of the org.json serialization of the entries, with the path separators unescaped,
+ * but the serialization is never materialized.
+ */
+public class UpdateManifestDigest {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final MessageDigest messageDigest;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder token = new StringBuilder();
+    private boolean hasEntries = false;
+
+    public UpdateManifestDigest() throws NoSuchAlgorithmException {
+        this.messageDigest = MessageDigest.getInstance("SHA-256");
+        /* String.getBytes() uses the default charset and replaces malformed input */
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.token.append('[');
+    }
+
+    /**
+     * Adds the next entry to the manifest. Entries must be added in sorted order.
+     */
+    public void addEntry(String manifestEntry) {
+        if (hasEntries) {
+            token.append(',');
+        }
+
+        token.append('"');
+        appendEscaped(token, manifestEntry);
+        token.append('"');
+        writeToken();
+        hasEntries = true;
+    }
+
+    /**
+     * Completes the manifest and returns its hash as a lowercase hex string.
+     */
+    public String getHash() {
+        token.append(']');
+        writeToken();
+        flushBuffer();
+        return UpdateHashKernel.toHexString(messageDigest.digest());
+    }
+
+    /**
+     * Same escaping as org.json, except for "/" which is left as is.
+     */
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void writeToken() {
+        CharBuffer charBuffer = CharBuffer.wrap(token);
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(charBuffer, byteBuffer, true);
+            if (result.isOverflow()) {
+                flushBuffer();
+            }
+        } while (result.isOverflow());
+
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            flushBuffer();
+        }
+
+        token.setLength(0);
+    }
+
+    private void flushBuffer() {
+        messageDigest.update(byteBuffer.array(), 0, byteBuffer.position());
+        byteBuffer.clear();
+    }
+}
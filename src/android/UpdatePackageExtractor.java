@@ -0,0 +1,106 @@
+package com.microsoft.cordova;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Extracts update archives, hashing the extracted files while their contents are being written.
+ */
+public class UpdatePackageExtractor {
+    private static final String WWW_FOLDER_PREFIX = "www/";
+
+    /**
+     * Extracts the given archive into the destination folder and returns the hash of the extracted www folder.
+     * The returned hash is the one UpdateHashUtils.getHashForPath computes for the extracted folder, without reading the files a second time.
+     *
+     * @param archive     the update archive
+     * @param destination the folder the archive is extracted into, created if it does not exist
+     * @param fileHashes  receives the hashes of the hashed www files, keyed by their path relative to the destination folder
+     */
+    public static String extract(File archive, File destination, Map<String, String> fileHashes) throws IOException, NoSuchAlgorithmException {
+        if (!destination.isDirectory() && !destination.mkdirs()) {
+            throw new IOException("Could not create the destination folder " + destination.getPath());
+        }
+
+        String destinationPath = destination.getCanonicalPath() + File.separator;
+        ZipInputStream zipInputStream = null;
+        try {
+            zipInputStream = new ZipInputStream(new BufferedInputStream(new FileInputStream(archive)));
+            ZipEntry zipEntry;
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                String entryName = zipEntry.getName();
+                File entryFile = new File(destination, entryName);
+                String entryPath = entryFile.getCanonicalPath();
+                if (!entryPath.startsWith(destinationPath)) {
+                    throw new IOException("The update archive contains an entry outside of the destination folder: " + entryName);
+                }
+
+                if (zipEntry.isDirectory()) {
+                    if (!entryFile.isDirectory() && !entryFile.mkdirs()) {
+                        throw new IOException("Could not create the folder " + entryFile.getPath());
+                    }
+                    continue;
+                }
+
+                File parentFolder = entryFile.getParentFile();
+                if (!parentFolder.isDirectory() && !parentFolder.mkdirs()) {
+                    throw new IOException("Could not create the folder " + parentFolder.getPath());
+                }
+
+                OutputStream outputStream = new FileOutputStream(entryFile);
+                try {
+                    String hash = UpdateHashKernel.copyAndHash(zipInputStream, outputStream);
+                    String relativePath = entryPath.substring(destinationPath.length()).replace(File.separatorChar, '/');
+                    if (isHashedPath(relativePath)) {
+                        /* a later entry with the same name overwrites the file, and its hash */
+                        fileHashes.put(relativePath, hash);
+                    }
+                } finally {
+                    outputStream.close();
+                }
+            }
+        } finally {
+            if (zipInputStream != null) {
+                zipInputStream.close();
+            }
+        }
+
+        List<String> manifestEntries = new ArrayList<String>(fileHashes.size());
+        for (Map.Entry<String, String> fileHash : fileHashes.entrySet()) {
+            manifestEntries.add(fileHash.getKey() + ":" + fileHash.getValue());
+        }
+
+        Collections.sort(manifestEntries);
+        UpdateManifestDigest manifestDigest = new UpdateManifestDigest();
+        for (String manifestEntry : manifestEntries) {
+            manifestDigest.addEntry(manifestEntry);
+        }
+
+        return manifestDigest.getHash();
+    }
+
+    private static boolean isHashedPath(String relativePath) {
+        if (!relativePath.startsWith(WWW_FOLDER_PREFIX)) {
+            return false;
+        }
+
+        for (String segment : relativePath.split("/")) {
+            if (UpdateHashUtils.isIgnoredFile(segment)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
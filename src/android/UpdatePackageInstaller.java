@@ -0,0 +1,290 @@
+package com.microsoft.cordova;
+
+import android.app.Activity;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deploys a downloaded update archive into its package folder in a single native pass.
+ * The extracted files are moved into place with renames. The files carried over from the current package of a diff update are hard linked when possible.
+ * Verifying the deployed package and recording it as the current package are left to the caller.
+ */
+public class UpdatePackageInstaller {
+    public static final String DIFF_MANIFEST_FILE_NAME = "hotcodepush.json";
+    private static final String DELETED_FILES_KEY = "deletedFiles";
+    private static final String WWW_FOLDER_NAME = "www";
+
+    /* the signature and the hash cache describe the current package contents, not the merged ones */
+    private static final Set<String> CURRENT_PACKAGE_IGNORED_FILES = new HashSet<String>(Arrays.asList(".codepushrelease", ".codepushhashcache", ".DS_Store", "__MACOSX"));
+
+    /**
+     * Outcome of a deployment.
+     */
+    public static class Result {
+        public boolean isDiffUpdate;
+        public String contentHash;
+        public String contentFingerprint;
+
+        public Result(boolean isDiffUpdate, String contentHash, String contentFingerprint) {
+            this.isDiffUpdate = isDiffUpdate;
+            this.contentHash = contentHash;
+            this.contentFingerprint = contentFingerprint;
+        }
+    }
+
+    /**
+     * Extracts the archive, merges it with the current package if it is a diff update, applies the deletions of the diff manifest,
+     * and returns the hash and the fingerprint of the deployed www folder. All paths are relative to the files directory.
+     *
+     * @param activity           the activity used to access the application files and assets
+     * @param archivePath        the downloaded update archive
+     * @param unzipPath          the folder the archive is extracted into, cleaned up before and after the deployment
+     * @param deployPath         the package folder the update is deployed to
+     * @param currentPackagePath the folder of the current package, or null if the binary contents are the current package
+     * @param hashingThreadCount the maximum number of threads used to hash a merged diff update
+     */
+    public static Result install(Activity activity, String archivePath, String unzipPath, String deployPath, String currentPackagePath, int hashingThreadCount)
+            throws IOException, NoSuchAlgorithmException, ClassNotFoundException, JSONException {
+        File filesDir = activity.getFilesDir();
+        File unzipDir = new File(filesDir, unzipPath);
+        File deployDir = new File(filesDir, deployPath);
+
+        /* leftovers of an interrupted deployment */
+        CodePushTrash codePushTrash = new CodePushTrash(filesDir);
+        codePushTrash.moveToTrash(unzipDir);
+        codePushTrash.moveToTrash(deployDir);
+        codePushTrash.emptyInBackground();
+
+        Map<String, String> extractedFileHashes = new HashMap<String, String>();
+        String extractedContentHash = UpdatePackageExtractor.extract(new File(filesDir, archivePath), unzipDir, extractedFileHashes);
+        UpdateBlobStore blobStore = new UpdateBlobStore(filesDir);
+
+        File parentDir = deployDir.getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("Could not create the folder " + parentDir.getPath());
+        }
+
+        File diffManifestFile = new File(unzipDir, DIFF_MANIFEST_FILE_NAME);
+        if (!diffManifestFile.exists()) {
+            /* the extracted folder is the complete package */
+            moveEntry(unzipDir, deployDir);
+            blobStore.addPackageFiles(deployDir, extractedFileHashes);
+            return new Result(false, extractedContentHash, UpdateHashUtils.getFolderFingerprint(new File(deployDir, WWW_FOLDER_NAME)));
+        }
+
+        JSONObject diffManifest = new JSONObject(Utilities.readFileContents(diffManifestFile));
+        diffManifestFile.delete();
+        List<File> deletedFiles = getDeletedFiles(diffManifest, deployDir);
+
+        if (currentPackagePath != null) {
+            File currentPackageDir = new File(filesDir, currentPackagePath);
+            PackageLinker packageLinker = new PackageLinker();
+            packageLinker.linkFolderContents(currentPackageDir, deployDir);
+            Utilities.logMessage("Linked " + packageLinker.linkedFileCount + " and copied " + packageLinker.copiedFileCount + " files of the current package");
+
+            /* linked files keep their size and modification time, so their cached hashes remain valid for the merged package */
+            File currentHashCacheFile = UpdateHashCache.getCacheFile(new File(currentPackageDir, WWW_FOLDER_NAME));
+            if (packageLinker.linkedFileCount > 0 && currentHashCacheFile.isFile()) {
+                copyFile(currentHashCacheFile, UpdateHashCache.getCacheFile(new File(deployDir, WWW_FOLDER_NAME)));
+            }
+        } else {
+            copyAssets(activity.getAssets(), new File(deployDir, WWW_FOLDER_NAME));
+        }
+
+        moveEntry(unzipDir, deployDir);
+
+        for (File deletedFile : deletedFiles) {
+            if (deletedFile.isFile() && !deletedFile.delete()) {
+                /* same as the JavaScript implementation, a failed deletion does not fail the update */
+                Utilities.logMessage("Could not delete file: " + deletedFile.getPath());
+            }
+        }
+
+        /* the files carried over from the current package are already linked to their blobs */
+        blobStore.addPackageFiles(deployDir, extractedFileHashes);
+        String contentFingerprint = UpdateHashUtils.getFolderFingerprint(new File(deployDir, WWW_FOLDER_NAME));
+        String contentHash = UpdateHashUtils.getHashForPath(activity, deployPath + "/" + WWW_FOLDER_NAME, hashingThreadCount);
+        return new Result(true, contentHash, contentFingerprint);
+    }
+
+    /**
+     * Resolves the files deleted by the diff manifest. The manifest has not been verified yet, so a path that leads outside of the package folder
+     * fails the deployment, the same way as an archive entry outside of the extraction folder.
+     */
+    private static List<File> getDeletedFiles(JSONObject diffManifest, File deployDir) throws IOException, JSONException {
+        List<File> deletedFiles = new ArrayList<File>();
+        JSONArray deletedPaths = diffManifest.optJSONArray(DELETED_FILES_KEY);
+        if (deletedPaths == null) {
+            return deletedFiles;
+        }
+
+        String deployDirPath = deployDir.getCanonicalPath() + File.separator;
+        for (int i = 0; i < deletedPaths.length(); i++) {
+            String deletedPath = deletedPaths.getString(i);
+            File deletedFile = new File(deployDir, deletedPath);
+            if (!deletedFile.getCanonicalPath().startsWith(deployDirPath)) {
+                throw new IOException("The diff manifest deletes a file outside of the package folder: " + deletedPath);
+            }
+
+            deletedFiles.add(deletedFile);
+        }
+
+        return deletedFiles;
+    }
+
+    /**
+     * Moves the source entry to the destination, merging folders that already exist and replacing files.
+     */
+    private static void moveEntry(File source, File destination) throws IOException {
+        if (source.isDirectory() && destination.isDirectory()) {
+            for (File child : source.listFiles()) {
+                moveEntry(child, new File(destination, child.getName()));
+            }
+
+            source.delete();
+            return;
+        }
+
+        if (destination.exists()) {
+            Utilities.deleteEntryRecursively(destination);
+        }
+
+        if (!source.renameTo(destination)) {
+            throw new IOException("Could not move " + source.getPath() + " to " + destination.getPath());
+        }
+    }
+
+    /**
+     * Recreates the current package in the new package folder with hard links, so that the unchanged files are neither copied nor stored twice.
+     * The packages are never modified in place: the update files replace the links, and the deleted files only remove them.
+     * Files are copied when linking is not possible, for example before API 21 or across file systems.
+     */
+    private static class PackageLinker {
+        private boolean isLinkingSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+        private int linkedFileCount = 0;
+        private int copiedFileCount = 0;
+
+        private void linkFolderContents(File sourceDir, File destinationDir) throws IOException {
+            File[] children = sourceDir.listFiles();
+            if (children == null) {
+                throw new IOException("Could not list the contents of " + sourceDir.getPath());
+            }
+
+            if (!destinationDir.isDirectory() && !destinationDir.mkdirs()) {
+                throw new IOException("Could not create the folder " + destinationDir.getPath());
+            }
+
+            for (File child : children) {
+                if (CURRENT_PACKAGE_IGNORED_FILES.contains(child.getName())) {
+                    continue;
+                }
+
+                File destination = new File(destinationDir, child.getName());
+                if (child.isDirectory()) {
+                    linkFolderContents(child, destination);
+                } else if (linkFile(child, destination)) {
+                    linkedFileCount++;
+                } else {
+                    copyFile(child, destination);
+                    copiedFileCount++;
+                }
+            }
+        }
+
+        private boolean linkFile(File source, File destination) {
+            if (!isLinkingSupported) {
+                return false;
+            }
+
+            try {
+                Os.link(source.getPath(), destination.getPath());
+                return true;
+            } catch (ErrnoException e) {
+                /* the failure applies to the whole package, so do not retry for every file */
+                Utilities.logMessage("Could not link the current package files, copying them instead. " + e.getMessage());
+                isLinkingSupported = false;
+                return false;
+            }
+        }
+    }
+
+    private static void copyFile(File source, File destination) throws IOException {
+        FileChannel sourceChannel = new FileInputStream(source).getChannel();
+        try {
+            FileChannel destinationChannel = new FileOutputStream(destination).getChannel();
+            try {
+                long size = sourceChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += sourceChannel.transferTo(position, size - position, destinationChannel);
+                }
+            } finally {
+                destinationChannel.close();
+            }
+        } finally {
+            sourceChannel.close();
+        }
+    }
+
+    private static void copyAssets(AssetManager assetManager, File destinationDir) throws IOException, ClassNotFoundException {
+        String assetsPrefix = WWW_FOLDER_NAME + "/";
+        for (String assetPath : Utilities.getAssetsList(assetManager, WWW_FOLDER_NAME, CURRENT_PACKAGE_IGNORED_FILES)) {
+            /* the assets list also matches sibling folders sharing the prefix */
+            if (!assetPath.startsWith(assetsPrefix)) {
+                continue;
+            }
+
+            File destination = new File(destinationDir, assetPath.substring(assetsPrefix.length()));
+            File parentDir = destination.getParentFile();
+            if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+                throw new IOException("Could not create the folder " + parentDir.getPath());
+            }
+
+            InputStream inputStream;
+            try {
+                inputStream = assetManager.open(assetPath);
+            } catch (FileNotFoundException e) {
+                /* folders excluded from the APK are still listed by the assets manifest */
+                continue;
+            }
+
+            try {
+                OutputStream outputStream = new FileOutputStream(destination);
+                try {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, read);
+                    }
+                } finally {
+                    outputStream.close();
+                }
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+}
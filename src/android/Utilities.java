@@ -9,12 +9,11 @@ import android.util.Log;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import static java.lang.Long.parseLong;
@@ -23,13 +22,18 @@ import static java.lang.Long.parseLong;
  * Utilities class used for file and other common native operations.
  */
 public class Utilities {
-    private static final String ASSETS_MANIFEST_FILENAME = "cdvasset.manifest";
+    /* the name of the plugin class, spelled out so that these utilities do not depend on the Cordova plugin */
+    private static final String LOG_TAG = "com.microsoft.cordova.CodePush";
 
     public static String readFileContents(File file) throws IOException {
+        return readStreamContents(new FileInputStream(file));
+    }
+
+    public static String readStreamContents(InputStream inputStream) throws IOException {
         StringBuilder sb = new StringBuilder();
         BufferedReader br = null;
         try {
-            br = new BufferedReader(new FileReader(file));
+            br = new BufferedReader(new InputStreamReader(inputStream));
             String currentLine;
 
             while ((currentLine = br.readLine()) != null) {
@@ -80,11 +84,11 @@ public class Utilities {
     }
 
     public static void logException(Throwable e) {
-        Log.e(CodePush.class.getName(), "An error occured. " + e.getMessage(), e);
+        Log.e(LOG_TAG, "An error occured. " + e.getMessage(), e);
     }
 
     public static void logMessage(String message) {
-        Log.e(CodePush.class.getName(), message);
+        Log.e(LOG_TAG, message);
     }
 
 
@@ -97,31 +101,7 @@ public class Utilities {
      * @return list of paths to all the assets for a given path in the following format: path/to/asset/asset_name.xxx
      */
     public static String[] getAssetsList(AssetManager assetManager, String path, Set<String> ignoredFiles) throws IOException, ClassNotFoundException {
-        ObjectInputStream ois = null;
-        List<String> flatAssetPaths = new ArrayList<String>();
-        try {
-            ois = new ObjectInputStream(assetManager.open(ASSETS_MANIFEST_FILENAME));
-            Map<String, String[]> directoryList = (Map<String, String[]>) ois.readObject();
-
-            for(String directoryKey: directoryList.keySet()){
-                if(!directoryKey.startsWith(path)){
-                    continue; //skip all the assets that are not in the path
-                }
-                String[] directoryContent = directoryList.get(directoryKey);
-                for(String item : directoryContent){
-                    String absolutePath = directoryKey + "/" + item;
-                    // check if the item is an asset, if it is not an asset it should be present as a key in the directory list
-                    if(!directoryList.containsKey(absolutePath) && ( ignoredFiles == null || !ignoredFiles.contains(item))) {
-                        flatAssetPaths.add(absolutePath);
-                    }
-                }
-            }
-
-            return flatAssetPaths.toArray(new String[]{});
-        } finally {
-            if (ois != null) {
-                ois.close();
-            }
-        }
+        List<String> flatAssetPaths = AssetManifestIndex.getInstance(assetManager).getAssetsList(path, ignoredFiles);
+        return flatAssetPaths.toArray(new String[]{});
     }
 }
@@ -208,6 +208,8 @@ declare var LocalPackage: LocalPackage_Static;
  */
 interface IPackageInfoMetadata extends ILocalPackage {
     nativeBuildTime: string;
+    contentHash?: string;
+    contentFingerprint?: string;
 }
 
 interface NativeUpdateNotification {
@@ -483,10 +485,30 @@ interface DownloadProgress {
     receivedBytes: number;
 }
 
+/**
+ * Defines the format of the results sent by the native downloadPackage action.
+ * Progress notifications only contain the progress, the final result only contains the hash of the downloaded archive.
+ */
+interface NativeDownloadResult {
+    progress?: DownloadProgress;
+    archiveHash?: string;
+}
+
+/**
+ * Defines the result of the native installPackage action, which deploys the update to its package folder.
+ */
+interface NativeInstallResult {
+    isDiffUpdate: boolean;
+    contentHash: string;
+    contentFingerprint: string;
+}
+
 /**
  * Defines the result of LocalPackage.handleDeployment execution.
  */
 interface DeploymentResult {
     deployDir: DirectoryEntry,
-    isDiffUpdate: boolean
+    isDiffUpdate: boolean,
+    contentHash?: string,          // Only set by the native deployment on Android, and passed to its verifyPackage action
+    contentFingerprint?: string    // Only set by the native deployment on Android, and passed to its verifyPackage action
 }
@@ -76,15 +76,37 @@ class LocalPackage extends Package implements ILocalPackage {
 
             var donePackageFileCopy = (deploymentResult: DeploymentResult) => {
                 this.verifyPackage(deploymentResult, installError, () => {
-                    packageVerified(deploymentResult.deployDir);
+                    packageVerified(deploymentResult);
                 });
             };
 
-            var packageVerified = (deployDir: DirectoryEntry) => {
-                this.localPath = deployDir.fullPath;
-                this.finishInstall(deployDir, installOptions, installSuccess, installError);
+            var packageVerified = (deploymentResult: DeploymentResult) => {
+                this.localPath = deploymentResult.deployDir.fullPath;
+                this.finishInstall(deploymentResult, installOptions, installSuccess, installError);
             };
 
+            if (cordova.platformId === "android") {
+                /* extract, merge and hash the update in a single native pass, moving the extracted files into place */
+                var archivePath = LocalPackage.DownloadDir + "/" + LocalPackage.PackageUpdateFileName;
+                cordova.exec((installResult: NativeInstallResult) => {
+                    FileUtil.getDataDirectory(newPackageLocation, false, (deployDirError: Error, deployDir: DirectoryEntry) => {
+                        if (deployDirError) {
+                            installError && installError(deployDirError);
+                        } else {
+                            donePackageFileCopy({
+                                deployDir,
+                                isDiffUpdate: installResult.isDiffUpdate,
+                                contentHash: installResult.contentHash,
+                                contentFingerprint: installResult.contentFingerprint
+                            });
+                        }
+                    });
+                }, (deployError: string) => {
+                    installError && installError(new Error("Could not deploy package. " + deployError));
+                }, "CodePush", "installPackage", [archivePath, LocalPackage.DownloadUnzipDir, newPackageLocation]);
+                return;
+            }
+
             FileUtil.getDataDirectory(LocalPackage.DownloadUnzipDir, false, (error: Error, directoryEntry: DirectoryEntry) => {
                 var unzipPackage = () => {
                     FileUtil.getDataDirectory(LocalPackage.DownloadUnzipDir, true, (innerError: Error, unzipDir: DirectoryEntry) => {
@@ -162,6 +184,18 @@ class LocalPackage extends Package implements ILocalPackage {
             CodePushUtil.logMessage("Applying full update");
         }
 
+        if (cordova.platformId === "android") {
+            /* read the signature, hash the contents and verify the signature in a single native call */
+            CodePushUtil.logMessage("Verifying package for folder path: " + deployDir.fullPath);
+            cordova.exec(() => {
+                successCallback();
+            }, (verificationError: string) => {
+                verificationFail(new Error(verificationError));
+            }, "CodePush", "verifyPackage", [deployDir.fullPath, this.packageHash, deploymentResult.contentHash || null,
+                deploymentResult.contentFingerprint || null, !!deploymentResult.isDiffUpdate]);
+            return;
+        }
+
         var isSignatureVerificationEnabled: boolean, isSignatureAppearedInBundle: boolean;
         var publicKey: string;
 
@@ -259,7 +293,9 @@ class LocalPackage extends Package implements ILocalPackage {
         cordova.exec(decodeSignatureSuccess, decodeSignatureFail, "CodePush", "decodeSignature", [publicKey, signature]);
     }
 
-    private finishInstall(deployDir: DirectoryEntry, installOptions: InstallOptions, installSuccess: SuccessCallback<InstallMode>, installError: ErrorCallback): void {
+    private finishInstall(deploymentResult: DeploymentResult, installOptions: InstallOptions, installSuccess: SuccessCallback<InstallMode>, installError: ErrorCallback): void {
+        var deployDir = deploymentResult.deployDir;
+
         function backupPackageInformationFileIfNeeded(backupIfNeededDone: Callback<void>) {
             NativeAppInfo.isPendingUpdate((pendingUpdate: boolean) => {
                 if (pendingUpdate) {
@@ -274,7 +310,7 @@ class LocalPackage extends Package implements ILocalPackage {
         LocalPackage.getCurrentOrDefaultPackage((oldPackage: LocalPackage) => {
             backupPackageInformationFileIfNeeded((backupError: Error) => {
                 /* continue on error, current package information is missing if this is the first update */
-                this.writeNewPackageMetadata(deployDir, (writeMetadataError: Error) => {
+                this.writeNewPackageMetadata(deploymentResult, (writeMetadataError: Error) => {
                     if (writeMetadataError) {
                         installError && installError(writeMetadataError);
                     } else {
@@ -337,7 +373,7 @@ class LocalPackage extends Package implements ILocalPackage {
         });
     }
 
-    private writeNewPackageMetadata(deployDir: DirectoryEntry, writeMetadataCallback: Callback<void>): void {
+    private writeNewPackageMetadata(deploymentResult: DeploymentResult, writeMetadataCallback: Callback<void>): void {
         NativeAppInfo.getApplicationBuildTime((buildTimeError: Error, timestamp: string) => {
             NativeAppInfo.getApplicationVersion((appVersionError: Error, appVersion: string) => {
                 buildTimeError && CodePushUtil.logError("Could not get application build time. " + buildTimeError);
@@ -355,7 +391,10 @@ class LocalPackage extends Package implements ILocalPackage {
                     packageHash: this.packageHash,
                     isFirstRun: false,
                     failedInstall: false,
-                    install: undefined
+                    install: undefined,
+                    /* lets the native side skip re-hashing the package while its contents are unchanged */
+                    contentHash: deploymentResult.contentFingerprint ? deploymentResult.contentHash : undefined,
+                    contentFingerprint: deploymentResult.contentFingerprint
                 };
 
                 LocalPackage.writeCurrentPackageInformation(currentPackageMetadata, writeMetadataCallback);
@@ -434,8 +473,8 @@ class LocalPackage extends Package implements ILocalPackage {
             diffCallback(e, null);
         };
 
-        /* copy old files except signature file */
-        LocalPackage.copyCurrentPackage(newPackageLocation, [".codepushrelease"], (currentPackageError: Error) => {
+        /* copy old files except signature and hash cache files */
+        LocalPackage.copyCurrentPackage(newPackageLocation, [".codepushrelease", ".codepushhashcache"], (currentPackageError: Error) => {
             /* copy new files */
             LocalPackage.handleCleanDeployment(newPackageLocation, (cleanDeployError: Error) => {
                 /* delete files mentioned in the manifest */
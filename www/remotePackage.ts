@@ -91,7 +91,34 @@ class RemotePackage extends Package implements IRemotePackage {
                 const filedir = cordova.file.dataDirectory + LocalPackage.DownloadDir + "/";
                 const filename = LocalPackage.PackageUpdateFileName;
 
-                cordova.plugin.http.downloadFile(this.downloadUrl, {}, {}, filedir + filename, onFileReady, onFileError);
+                if (cordova.platformId === "android") {
+                    /* download natively, resuming interrupted downloads and hashing the archive as it arrives */
+                    const onNativeDownloadResult = (result: NativeDownloadResult) => {
+                        if (result.progress) {
+                            downloadProgress && downloadProgress(result.progress);
+                            return;
+                        }
+
+                        CodePushUtil.logMessage("Downloaded archive hash: " + result.archiveHash);
+                        FileUtil.getDataFile(LocalPackage.DownloadDir, filename, false, (error: Error, fileEntry: FileEntry) => {
+                            if (error) {
+                                this.isDownloading = false;
+                                CodePushUtil.invokeErrorCallback(error, errorCallback);
+                            } else {
+                                onFileReady(fileEntry);
+                            }
+                        });
+                    };
+
+                    const onNativeDownloadError = (error: string) => {
+                        this.isDownloading = false;
+                        CodePushUtil.invokeErrorCallback(new Error(error), errorCallback);
+                    };
+
+                    cordova.exec(onNativeDownloadResult, onNativeDownloadError, "CodePush", "downloadPackage", [this.downloadUrl, LocalPackage.DownloadDir + "/" + filename]);
+                } else {
+                    cordova.plugin.http.downloadFile(this.downloadUrl, {}, {}, filedir + filename, onFileReady, onFileError);
+                }
             }
         } catch (e) {
             CodePushUtil.invokeErrorCallback(new Error("An error occurred while downloading the package. " + (e && e.message) ? e.message : ""), errorCallback);